@@ -0,0 +1,193 @@
+package nl.b3p.geotools.data.msaccess.benchmark;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import nl.b3p.geotools.data.msaccess.ConnectionProvider;
+import nl.b3p.geotools.data.msaccess.MsAccessDataStore;
+import nl.b3p.geotools.data.msaccess.MsAccessDataStoreFactory;
+import nl.b3p.geotools.data.msaccess.PooledConnectionProvider;
+
+/**
+ * Synthetic tables standing in for an Access database, created in any JDBC
+ * database; by default an in-memory HSQLDB database.
+ *
+ * A table of n rows and width w is named T_n_w and has an integer key ID,
+ * X and Y columns in EPSG:28992 and w columns C0..Cw-1 that are in turn
+ * VARCHAR, INTEGER, DOUBLE and TIMESTAMP. All tables are listed in the
+ * controller table LAYERS.
+ */
+public class BenchmarkDatabase {
+
+    public static final String DEFAULT_URL = "jdbc:hsqldb:mem:msaccess-benchmark";
+    public static final String USER = "SA";
+    public static final String PASSWORD = "";
+    public static final String CONTROLER_TABLE = "LAYERS";
+    public static final String EPSG = "EPSG:28992";
+
+    public static final double MIN_X = 0;
+    public static final double MAX_X = 280000;
+    public static final double MIN_Y = 300000;
+    public static final double MAX_Y = 625000;
+
+    private BenchmarkDatabase() {
+    }
+
+    public static Connection connect(String jdbcUrl) throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, USER, PASSWORD);
+    }
+
+    public static String tableName(int rows, int width) {
+        return "T_" + rows + "_" + width;
+    }
+
+    /**
+     * Create a table unless it already exists.
+     *
+     * @return the table name
+     */
+    public static String createTable(String jdbcUrl, String name, int rows, int width) throws SQLException {
+        try (Connection conn = connect(jdbcUrl)) {
+            try (Statement st = conn.createStatement()) {
+                if (!exists(conn, CONTROLER_TABLE)) {
+                    st.execute("create table " + CONTROLER_TABLE + " (TABLENAME varchar(128), TABLETYPE varchar(32))");
+                }
+                if (exists(conn, name)) {
+                    return name;
+                }
+                StringBuilder ddl = new StringBuilder("create table " + name + " (ID integer primary key, X double, Y double");
+                for (int c = 0; c < width; c++) {
+                    ddl.append(", C").append(c).append(' ').append(columnType(c));
+                }
+                st.execute(ddl.append(")").toString());
+                st.execute("insert into " + CONTROLER_TABLE + " values ('" + name + "', 'point')");
+            }
+            fill(conn, name, rows, width);
+        }
+        return name;
+    }
+
+    private static String columnType(int column) {
+        switch (column % 4) {
+            case 0:
+                return "varchar(40)";
+            case 1:
+                return "integer";
+            case 2:
+                return "double";
+            default:
+                return "timestamp";
+        }
+    }
+
+    private static boolean exists(Connection conn, String table) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(null, null, table, null)) {
+            return rs.next();
+        }
+    }
+
+    private static void fill(Connection conn, String name, int rows, int width) throws SQLException {
+        StringBuilder q = new StringBuilder("insert into " + name + " values (?, ?, ?");
+        for (int c = 0; c < width; c++) {
+            q.append(", ?");
+        }
+        q.append(")");
+        Random random = new Random(rows * 31L + width);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(q.toString())) {
+            for (int i = 0; i < rows; i++) {
+                ps.setInt(1, i);
+                ps.setDouble(2, MIN_X + random.nextDouble() * (MAX_X - MIN_X));
+                ps.setDouble(3, MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y));
+                for (int c = 0; c < width; c++) {
+                    int p = c + 4;
+                    switch (c % 4) {
+                        case 0:
+                            ps.setString(p, "value " + random.nextInt(1000));
+                            break;
+                        case 1:
+                            ps.setInt(p, random.nextInt(1000));
+                            break;
+                        case 2:
+                            ps.setDouble(p, random.nextDouble() * 1000);
+                            break;
+                        default:
+                            ps.setTimestamp(p, new Timestamp(1500000000000L + random.nextInt(1000000) * 1000L));
+                            break;
+                    }
+                }
+                ps.addBatch();
+                if (i % 1000 == 999) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * @return datastore parameters for the benchmark tables, without the
+     * url as connections are made by the connection provider
+     */
+    public static Map<String, Object> dbconfig() {
+        Map<String, Object> dbconfig = new HashMap<>();
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_CONTROLER_TABLE.key, CONTROLER_TABLE);
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_CONTROLER_COLUMN_NAME.key, "TABLENAME");
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_CONTROLER_COLUMN_TYPE.key, "TABLETYPE");
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_SRS.key, EPSG);
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_XLABELS.key, "X");
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_YLABELS.key, "Y");
+        return dbconfig;
+    }
+
+    /**
+     * Open a datastore on the benchmark tables with a connection pool like
+     * the default one.
+     *
+     * @param params extra datastore parameters
+     */
+    public static MsAccessDataStore openDataStore(String jdbcUrl, Map<String, Object> params) throws IOException {
+        Map<String, Object> dbconfig = dbconfig();
+        dbconfig.putAll(params);
+        ConnectionProvider provider = new PooledConnectionProvider(new JdbcConnectionProvider(jdbcUrl),
+                MsAccessDataStore.DEFAULT_POOL_SIZE, 60000L, 30000L);
+        return new MsAccessDataStore(dbconfig, provider);
+    }
+
+    /**
+     * Opens a new connection to a JDBC url for every call.
+     */
+    public static class JdbcConnectionProvider implements ConnectionProvider {
+
+        private final String jdbcUrl;
+
+        public JdbcConnectionProvider(String jdbcUrl) {
+            this.jdbcUrl = jdbcUrl;
+        }
+
+        @Override
+        public Connection getConnection() throws IOException {
+            try {
+                return connect(jdbcUrl);
+            } catch (SQLException ex) {
+                throw new IOException(ex.getLocalizedMessage());
+            }
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+}
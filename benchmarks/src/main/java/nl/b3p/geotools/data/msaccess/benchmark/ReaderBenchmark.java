@@ -0,0 +1,145 @@
+package nl.b3p.geotools.data.msaccess.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import nl.b3p.geotools.data.msaccess.MsAccessDataStore;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of reading features. Besides scans per second the rows counter
+ * reports rows per second; run with -prof gc for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+
+    private static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"8", "32"})
+    public int width;
+
+    @Param({BenchmarkDatabase.DEFAULT_URL})
+    public String jdbcUrl;
+
+    private MsAccessDataStore dataStore;
+    private String typeName;
+    private Filter bboxFilter;
+    private Filter attributeFilter;
+
+    /**
+     * Rows read in an iteration, reported by JMH as rows per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Rows {
+
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        typeName = BenchmarkDatabase.createTable(jdbcUrl, BenchmarkDatabase.tableName(rows, width), rows, width);
+        dataStore = BenchmarkDatabase.openDataStore(jdbcUrl, Collections.<String, Object>emptyMap());
+
+        // a tenth of the extent in both directions, about 1% of the rows
+        double w = (BenchmarkDatabase.MAX_X - BenchmarkDatabase.MIN_X) / 10;
+        double h = (BenchmarkDatabase.MAX_Y - BenchmarkDatabase.MIN_Y) / 10;
+        bboxFilter = ff.bbox("the_geom", BenchmarkDatabase.MIN_X + 4 * w, BenchmarkDatabase.MIN_Y + 4 * h,
+                BenchmarkDatabase.MIN_X + 5 * w, BenchmarkDatabase.MIN_Y + 5 * h, BenchmarkDatabase.EPSG);
+        attributeFilter = ff.less(ff.property("C1"), ff.literal(100));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataStore.dispose();
+    }
+
+    /**
+     * Read every attribute of every row.
+     */
+    @Benchmark
+    public void readAll(Rows counter, Blackhole bh) throws IOException {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = dataStore.getFeatureReader(new Query(typeName), Transaction.AUTO_COMMIT);
+        try {
+            while (reader.hasNext()) {
+                SimpleFeature f = reader.next();
+                for (int i = 0; i < f.getAttributeCount(); i++) {
+                    bh.consume(f.getAttribute(i));
+                }
+                counter.rows++;
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read only the features, as a renderer that only uses the geometry.
+     */
+    @Benchmark
+    public void readGeometry(Rows counter, Blackhole bh) throws IOException {
+        read(new Query(typeName), counter, bh);
+    }
+
+    @Benchmark
+    public void readOneAttribute(Rows counter, Blackhole bh) throws IOException {
+        read(new Query(typeName, Filter.INCLUDE, new String[]{"C0"}), counter, bh);
+    }
+
+    @Benchmark
+    public void readBBOX(Rows counter, Blackhole bh) throws IOException {
+        read(new Query(typeName, bboxFilter), counter, bh);
+    }
+
+    @Benchmark
+    public void readAttributeFilter(Rows counter, Blackhole bh) throws IOException {
+        read(new Query(typeName, attributeFilter), counter, bh);
+    }
+
+    private void read(Query query, Rows counter, Blackhole bh) throws IOException {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = dataStore.getFeatureReader(query, Transaction.AUTO_COMMIT);
+        try {
+            while (reader.hasNext()) {
+                bh.consume(reader.next().getDefaultGeometry());
+                counter.rows++;
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
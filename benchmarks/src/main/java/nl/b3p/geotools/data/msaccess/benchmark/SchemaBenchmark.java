@@ -0,0 +1,105 @@
+package nl.b3p.geotools.data.msaccess.benchmark;
+
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+import nl.b3p.geotools.data.msaccess.MsAccessDataStore;
+import nl.b3p.geotools.data.msaccess.SpatialUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Time to list the layers and build their schemas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaBenchmark {
+
+    @Param({"100"})
+    public int tables;
+
+    @Param({"8", "32"})
+    public int width;
+
+    @Param({BenchmarkDatabase.DEFAULT_URL})
+    public String jdbcUrl;
+
+    private String[] typeNames;
+    private Connection conn;
+    private BenchmarkDatabase.JdbcConnectionProvider provider;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        typeNames = new String[tables];
+        for (int i = 0; i < tables; i++) {
+            typeNames[i] = BenchmarkDatabase.createTable(jdbcUrl, "S_" + width + "_" + i, 10, width);
+        }
+        conn = BenchmarkDatabase.connect(jdbcUrl);
+        provider = new BenchmarkDatabase.JdbcConnectionProvider(jdbcUrl);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Benchmark
+    public SimpleFeatureType createFeatureType() throws Exception {
+        return SpatialUtil.createFeatureType(typeNames[0], BenchmarkDatabase.EPSG, conn);
+    }
+
+    @Benchmark
+    public String[] getTypeNames() throws Exception {
+        MsAccessDataStore dataStore = new MsAccessDataStore(BenchmarkDatabase.dbconfig(), provider);
+        try {
+            return dataStore.getTypeNames();
+        } finally {
+            dataStore.dispose();
+        }
+    }
+
+    /**
+     * Build all schemas of a new datastore one table at a time.
+     */
+    @Benchmark
+    public void getSchemas(Blackhole bh) throws Exception {
+        MsAccessDataStore dataStore = new MsAccessDataStore(BenchmarkDatabase.dbconfig(), provider);
+        try {
+            for (String typeName : dataStore.getTypeNames()) {
+                bh.consume(dataStore.getSchema(typeName));
+            }
+        } finally {
+            dataStore.dispose();
+        }
+    }
+
+    /**
+     * Build all schemas of a new datastore with one metadata query.
+     */
+    @Benchmark
+    public void loadSchemas(Blackhole bh) throws Exception {
+        MsAccessDataStore dataStore = new MsAccessDataStore(BenchmarkDatabase.dbconfig(), provider);
+        try {
+            dataStore.loadSchemas();
+            bh.consume(dataStore.getSchema(typeNames[0]));
+        } finally {
+            dataStore.dispose();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Storage backend used to open an MS Access database.
+ *
+ * The ODBC backend needs the JDBC-ODBC bridge, which only exists on Windows
+ * JREs before Java 8. The UCanAccess backend reads the .mdb/.accdb file
+ * in-process with Jackcess and runs on any platform.
+ */
+public enum AccessBackend {
+
+    ODBC("odbc", "sun.jdbc.odbc.JdbcOdbcDriver") {
+        @Override
+        protected String getJdbcUrl(URL url) {
+            String msaccessFile = url.getFile().toLowerCase().substring(1);
+            return "jdbc:odbc:Driver={Microsoft Access Driver (*.mdb)};DBQ=" + msaccessFile;
+        }
+
+        @Override
+        protected Connection openConnection(String jdbcUrl) throws SQLException {
+            return DriverManager.getConnection(jdbcUrl, "yuit", "tyuityu");
+        }
+    },
+    UCANACCESS("ucanaccess", "net.ucanaccess.jdbc.UcanaccessDriver") {
+        @Override
+        protected String getJdbcUrl(URL url) {
+            return "jdbc:ucanaccess://" + toFile(url).getAbsolutePath();
+        }
+    };
+
+    private static final Log log = LogFactory.getLog(AccessBackend.class);
+
+    public static final AccessBackend DEFAULT = UCANACCESS;
+
+    private final String name;
+    private final String driverClassName;
+
+    AccessBackend(String name, String driverClassName) {
+        this.name = name;
+        this.driverClassName = driverClassName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDriverClassName() {
+        return driverClassName;
+    }
+
+    protected abstract String getJdbcUrl(URL url);
+
+    protected Connection openConnection(String jdbcUrl) throws SQLException {
+        return DriverManager.getConnection(jdbcUrl);
+    }
+
+    /**
+     * Open a new connection to the database pointed to by url.
+     */
+    public Connection getConnection(URL url) throws IOException {
+        try {
+            Class.forName(driverClassName);
+        } catch (ClassNotFoundException ex) {
+            log.error(driverClassName + " not found!", ex);
+            throw new IOException(ex.getLocalizedMessage());
+        }
+        String jdbcUrl = getJdbcUrl(url);
+        try {
+            return openConnection(jdbcUrl);
+        } catch (SQLException ex) {
+            log.error("Connectionstring: " + jdbcUrl);
+            log.error("Connection not made!", ex);
+            throw new IOException(ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Look up a backend by name, case insensitive.
+     *
+     * @param name backend name, null for the default backend
+     * @return the matching backend
+     * @throws IOException if there is no backend with this name
+     */
+    public static AccessBackend forName(String name) throws IOException {
+        if (name == null || name.trim().isEmpty()) {
+            return DEFAULT;
+        }
+        for (AccessBackend backend : values()) {
+            if (backend.name.equalsIgnoreCase(name.trim())) {
+                return backend;
+            }
+        }
+        throw new IOException("Unknown MS Access backend: " + name);
+    }
+
+    static File toFile(URL url) {
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return new File(url.getFile());
+        }
+    }
+}
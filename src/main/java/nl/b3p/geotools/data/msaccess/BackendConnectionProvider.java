@@ -0,0 +1,32 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.IOException;
+import java.net.URL;
+import java.sql.Connection;
+
+/**
+ * Opens a new connection through an {@link AccessBackend} on every call.
+ */
+public class BackendConnectionProvider implements ConnectionProvider {
+
+    private final URL url;
+    private final AccessBackend backend;
+
+    public BackendConnectionProvider(URL url, AccessBackend backend) {
+        this.url = url;
+        this.backend = backend;
+    }
+
+    public AccessBackend getBackend() {
+        return backend;
+    }
+
+    @Override
+    public Connection getConnection() throws IOException {
+        return backend.getConnection(url);
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
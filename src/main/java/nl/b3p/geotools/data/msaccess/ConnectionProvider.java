@@ -0,0 +1,19 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.IOException;
+import java.sql.Connection;
+
+/**
+ * Source of database connections for a datastore. Connections handed out
+ * are owned by the caller, who must close them when done; depending on the
+ * implementation closing returns the connection to a pool.
+ */
+public interface ConnectionProvider {
+
+    Connection getConnection() throws IOException;
+
+    /**
+     * Close all connections held by this provider.
+     */
+    void dispose();
+}
@@ -0,0 +1,448 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+
+/**
+ * Reads the rows of a type that changed since the previous read, for
+ * copying tables to another database without full scans.
+ *
+ * When a type has one of the watermark columns (an autonumber or last
+ * modified column) only the rows with at least the highest value read
+ * before are read. As rows with that same value may be committed later, the
+ * keys and content hashes of the rows at the watermark are kept to pass only
+ * those not passed before. Otherwise every row is read and only rows with
+ * another content hash than before are returned. Deleted rows are found by
+ * comparing the keys, which for a type without watermark column and key are
+ * the content hashes themselves, numbered when rows are identical. For a
+ * type with watermark column that means reading all keys, so that is only
+ * done when asked for.
+ *
+ * The watermarks are stored in a file with the stamp of the database, a
+ * type is not read at all when the database did not change.
+ */
+public class DeltaReader {
+
+    private static final Log log = LogFactory.getLog(DeltaReader.class);
+
+    private static final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    static final int MAGIC = 0x42334457;
+    static final int VERSION = 2;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_LONG = 1;
+    private static final byte VALUE_DOUBLE = 2;
+    private static final byte VALUE_TIMESTAMP = 3;
+    private static final byte VALUE_STRING = 4;
+
+    private final MsAccessDataStore dataStore;
+    private final File stateFile;
+    private final String[] watermarkLabels;
+    private final boolean findDeletes;
+    private Map<String, TypeState> states;
+
+    /**
+     * @param stateFile file to store the watermarks in, null to keep them in
+     * memory only
+     * @param watermarkLabels names of autonumber or last modified columns,
+     * the first one present in a type is used
+     * @param findDeletes also find the deleted rows of types with a
+     * watermark column, by reading all keys
+     */
+    public DeltaReader(MsAccessDataStore dataStore, File stateFile, String[] watermarkLabels, boolean findDeletes) {
+        this.dataStore = dataStore;
+        this.stateFile = stateFile;
+        this.watermarkLabels = watermarkLabels == null ? new String[0] : watermarkLabels;
+        this.findDeletes = findDeletes;
+    }
+
+    /**
+     * @return the watermark file for a database: its name followed by
+     * ".delta"
+     */
+    public static File forSource(File sourceFile) {
+        return new File(sourceFile.getParentFile(), sourceFile.getName() + ".delta");
+    }
+
+    /**
+     * Pass the rows of a type that changed since the previous call to a
+     * sink. The first call passes all rows. The watermark is only stored
+     * after all rows are passed without errors.
+     */
+    public synchronized Changes readChanges(String typeName, FeatureSink sink) throws IOException {
+        if (states == null) {
+            states = read();
+        }
+        SourceStamp stamp = SourceStamp.of(dataStore.getSourceFile());
+        SimpleFeatureType schema = dataStore.getSchema(typeName);
+        String column = findWatermarkColumn(schema);
+        String keyColumn = dataStore.getKeyColumn(typeName);
+        TypeState previous = states.get(typeName);
+        if (previous != null && !equals(column, previous.column)) {
+            log.info("Watermark column of " + typeName + " changed, reading all rows");
+            previous = null;
+        }
+
+        Changes changes = new Changes(previous == null);
+        sink.start(schema);
+        if (previous != null && stamp != null && stamp.equals(previous.stamp)) {
+            sink.finish(schema, 0);
+            return changes;
+        }
+
+        TypeState next = new TypeState(column, stamp);
+        if (column != null) {
+            Object watermark = previous == null ? null : previous.watermark;
+            Filter filter = watermark == null ? Filter.INCLUDE
+                    : ff.greaterOrEqual(ff.property(column), ff.literal(watermark));
+            next.watermark = watermark;
+            // rows without key are told apart by their hash, numbered per
+            // hash at the previous and at the next watermark
+            Map<Long, Integer> previousOccurrences = new HashMap<>();
+            Map<Long, Integer> nextOccurrences = new HashMap<>();
+            boolean readKeys = findDeletes && keyColumn != null;
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader = dataStore.getFeatureReader(new Query(typeName, filter), Transaction.AUTO_COMMIT);
+            try {
+                while (reader.hasNext()) {
+                    SimpleFeature f = reader.next();
+                    Object value = f.getAttribute(column);
+                    long hash = hash(f);
+                    if (value != null) {
+                        int order = next.watermark == null ? 1 : compare(value, next.watermark);
+                        if (order > 0) {
+                            next.watermark = value;
+                            next.boundary.clear();
+                            nextOccurrences.clear();
+                        }
+                        if (order >= 0) {
+                            next.boundary.put(rowId(f, keyColumn, hash, nextOccurrences), hash);
+                        }
+                    }
+                    if (previous == null && readKeys) {
+                        next.rows.put(f.getID(), 0L);
+                    }
+                    if (watermark != null && value != null && compare(value, watermark) == 0) {
+                        Long passed = previous.boundary.get(rowId(f, keyColumn, hash, previousOccurrences));
+                        if (passed != null && passed == hash) {
+                            continue;
+                        }
+                    }
+                    sink.accept(f);
+                    changes.changedCount++;
+                }
+            } finally {
+                reader.close();
+            }
+            if (!readKeys) {
+                next.rows = null;
+            } else if (previous != null) {
+                // only the keys are read to find deleted rows
+                reader = dataStore.getFeatureReader(new Query(typeName, Filter.INCLUDE, new String[]{keyColumn}), Transaction.AUTO_COMMIT);
+                try {
+                    while (reader.hasNext()) {
+                        next.rows.put(reader.next().getID(), 0L);
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } else {
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader = dataStore.getFeatureReader(new Query(typeName), Transaction.AUTO_COMMIT);
+            // number of rows read per hash, so identical rows get their own id
+            Map<Long, Integer> occurrences = keyColumn != null ? null : new HashMap<>();
+            try {
+                while (reader.hasNext()) {
+                    SimpleFeature f = reader.next();
+                    long hash = hash(f);
+                    String id = keyColumn != null ? f.getID() : hashId(hash, occurrences.merge(hash, 1, Integer::sum) - 1);
+                    next.rows.put(id, hash);
+                    Long old = previous == null || previous.rows == null ? null : previous.rows.get(id);
+                    if (old == null || old != hash) {
+                        sink.accept(f);
+                        changes.changedCount++;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        if (previous != null && previous.rows != null && next.rows != null) {
+            for (String id : previous.rows.keySet()) {
+                if (!next.rows.containsKey(id)) {
+                    changes.deletedIds.add(id);
+                }
+            }
+        }
+        sink.finish(schema, changes.changedCount);
+
+        states.put(typeName, next);
+        write();
+        log.debug(typeName + ": " + changes.changedCount + " changed, " + changes.deletedIds.size() + " deleted");
+        return changes;
+    }
+
+    /**
+     * @return the feature id of a row with key, else its hash id
+     * @param occurrences number of rows read before per hash, updated
+     */
+    private static String rowId(SimpleFeature f, String keyColumn, long hash, Map<Long, Integer> occurrences) {
+        return keyColumn != null ? f.getID() : hashId(hash, occurrences.merge(hash, 1, Integer::sum) - 1);
+    }
+
+    /**
+     * @return the id of a row without key: its hash, followed by the number
+     * of identical rows read before it
+     */
+    private static String hashId(long hash, int occurrence) {
+        String id = "#" + Long.toHexString(hash);
+        return occurrence == 0 ? id : id + "." + occurrence;
+    }
+
+    /**
+     * Forget the watermark of a type, so the next read returns all rows.
+     */
+    public synchronized void reset(String typeName) throws IOException {
+        if (states == null) {
+            states = read();
+        }
+        if (states.remove(typeName) != null) {
+            write();
+        }
+    }
+
+    private String findWatermarkColumn(SimpleFeatureType schema) {
+        for (String label : watermarkLabels) {
+            for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+                if (!(descriptor instanceof GeometryDescriptor) && descriptor.getLocalName().equalsIgnoreCase(label.trim())) {
+                    return descriptor.getLocalName();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean equals(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object value1, Object value2) {
+        return ((Comparable) value1).compareTo(value2);
+    }
+
+    /**
+     * @return 64 bit FNV-1a hash of the attribute values, except the geometry
+     * which is made of the x/y columns
+     */
+    static long hash(SimpleFeature f) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < f.getAttributeCount(); i++) {
+            if (f.getFeatureType().getDescriptor(i) instanceof GeometryDescriptor) {
+                continue;
+            }
+            Object value = f.getAttribute(i);
+            byte[] bytes = value == null ? new byte[]{0} : value.toString().getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= 0x1f;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private Map<String, TypeState> read() {
+        Map<String, TypeState> result = new HashMap<>();
+        if (stateFile == null || !stateFile.isFile()) {
+            return result;
+        }
+        try (DataInputStream in = StampedFile.open(stateFile, MAGIC, VERSION, null)) {
+            if (in == null) {
+                log.warn("Watermark file " + stateFile + " has an unknown format, reading all rows");
+                return result;
+            }
+            int typeCount = in.readInt();
+            for (int t = 0; t < typeCount; t++) {
+                String typeName = in.readUTF();
+                SourceStamp stamp = in.readBoolean() ? new SourceStamp(in.readLong(), in.readLong()) : null;
+                TypeState state = new TypeState(in.readBoolean() ? in.readUTF() : null, stamp);
+                state.watermark = readValue(in);
+                int boundaryCount = in.readInt();
+                for (int r = 0; r < boundaryCount; r++) {
+                    String id = in.readUTF();
+                    state.boundary.put(id, in.readLong());
+                }
+                int rowCount = in.readInt();
+                if (rowCount < 0) {
+                    state.rows = null;
+                }
+                for (int r = 0; r < rowCount; r++) {
+                    String id = in.readUTF();
+                    state.rows.put(id, in.readLong());
+                }
+                result.put(typeName, state);
+            }
+        } catch (IOException ex) {
+            log.warn("Watermark file " + stateFile + " could not be read, reading all rows: " + ex.getLocalizedMessage());
+            result.clear();
+        }
+        return result;
+    }
+
+    private void write() throws IOException {
+        if (stateFile == null) {
+            return;
+        }
+        // stamped per type, as types are read at different times
+        StampedFile.write(stateFile, MAGIC, VERSION, null, out -> {
+            out.writeInt(states.size());
+            for (Map.Entry<String, TypeState> entry : states.entrySet()) {
+                TypeState state = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeBoolean(state.stamp != null);
+                if (state.stamp != null) {
+                    out.writeLong(state.stamp.getSize());
+                    out.writeLong(state.stamp.getLastModified());
+                }
+                out.writeBoolean(state.column != null);
+                if (state.column != null) {
+                    out.writeUTF(state.column);
+                }
+                writeValue(out, state.watermark);
+                out.writeInt(state.boundary.size());
+                for (Map.Entry<String, Long> row : state.boundary.entrySet()) {
+                    out.writeUTF(row.getKey());
+                    out.writeLong(row.getValue());
+                }
+                out.writeInt(state.rows == null ? -1 : state.rows.size());
+                if (state.rows != null) {
+                    for (Map.Entry<String, Long> row : state.rows.entrySet()) {
+                        out.writeUTF(row.getKey());
+                        out.writeLong(row.getValue());
+                    }
+                }
+            }
+        });
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        switch (in.readByte()) {
+            case VALUE_LONG:
+                return in.readLong();
+            case VALUE_DOUBLE:
+                return in.readDouble();
+            case VALUE_TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case VALUE_STRING:
+                return in.readUTF();
+            default:
+                return null;
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Long || value instanceof Integer) {
+            out.writeByte(VALUE_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(VALUE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Timestamp) {
+            out.writeByte(VALUE_TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value != null) {
+            out.writeByte(VALUE_STRING);
+            out.writeUTF(value.toString());
+        } else {
+            out.writeByte(VALUE_NULL);
+        }
+    }
+
+    private static class TypeState {
+
+        final String column;
+        final SourceStamp stamp;
+        Object watermark;
+        /**
+         * Hash per key of the rows with the watermark value.
+         */
+        final Map<String, Long> boundary = new HashMap<>();
+        /**
+         * Hash per key of the rows read, 0 when using a watermark column;
+         * null if deleted rows are not looked for.
+         */
+        Map<String, Long> rows = new LinkedHashMap<>();
+
+        TypeState(String column, SourceStamp stamp) {
+            this.column = column;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * Result of {@link #readChanges(String, FeatureSink)}.
+     */
+    public static class Changes {
+
+        private final boolean full;
+        private int changedCount = 0;
+        private final List<String> deletedIds = new ArrayList<>();
+
+        Changes(boolean full) {
+            this.full = full;
+        }
+
+        /**
+         * @return true if all rows were passed because there was no
+         * watermark yet
+         */
+        public boolean isFull() {
+            return full;
+        }
+
+        /**
+         * @return number of new or changed rows passed to the sink
+         */
+        public int getChangedCount() {
+            return changedCount;
+        }
+
+        /**
+         * @return feature ids of the rows deleted since the previous read,
+         * for types with a watermark column only when asked for; for types
+         * without key and watermark column these are "#" followed by the
+         * content hash of the row, and for identical rows a dot and the
+         * number of identical rows before it
+         */
+        public List<String> getDeletedIds() {
+            return Collections.unmodifiableList(deletedIds);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.IOException;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Receives the features of a bulk read. The features of one type are passed
+ * in sequence from one thread, different types are read in parallel so an
+ * implementation must be thread safe across types.
+ */
+public interface FeatureSink {
+
+    /**
+     * Called before the first feature of a type.
+     */
+    default void start(SimpleFeatureType featureType) throws IOException {
+    }
+
+    void accept(SimpleFeature feature) throws IOException;
+
+    /**
+     * Called after the last feature of a type.
+     */
+    default void finish(SimpleFeatureType featureType, int count) throws IOException {
+    }
+}
@@ -0,0 +1,133 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.geotools.data.CollectionFeatureReader;
+import org.geotools.data.FeatureReader;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Aggregates points to one feature per cell of a square grid, with the
+ * number of points in the cell and their average location. The cells are
+ * either computed by the database with a GROUP BY on the x/y columns, see
+ * {@link #getSelect(String, String, String, String)}, or here from the
+ * points passed to {@link #add(double, double)}.
+ */
+public class GridAggregator {
+
+    public static final String COUNT_ATTRIBUTE = "count";
+
+    private final SimpleFeatureType featureType;
+    private final double cellSize;
+    private final GeometryFactory geometryFactory;
+    private final Map<Long, Cell> cells = new LinkedHashMap<>();
+
+    /**
+     * @param schema type of the aggregated features
+     * @param cellSize width and height of a cell in the units of the CRS of
+     * schema
+     */
+    public GridAggregator(SimpleFeatureType schema, double cellSize) {
+        this.featureType = createFeatureType(schema);
+        this.cellSize = cellSize;
+        this.geometryFactory = RowMapping.createGeometryFactory(schema.getCoordinateReferenceSystem());
+    }
+
+    /**
+     * @return type with the geometry of schema and the count attribute
+     */
+    public static SimpleFeatureType createFeatureType(SimpleFeatureType schema) {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName(schema.getName());
+        builder.setCRS(schema.getCoordinateReferenceSystem());
+        builder.add(schema.getGeometryDescriptor().getLocalName(), Point.class);
+        builder.add(COUNT_ATTRIBUTE, Integer.class);
+        return builder.buildFeatureType();
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    /**
+     * @return query returning the column and row of the cell, the number of
+     * points and the sum of x and y per cell
+     */
+    public String getSelect(String tableName, String xColumn, String yColumn, String where) {
+        // a literal instead of a parameter, the expressions in the select
+        // and the group by must be the same
+        String size = BigDecimal.valueOf(cellSize).toPlainString();
+        String column = "int(" + xColumn + " / " + size + ")";
+        String row = "int(" + yColumn + " / " + size + ")";
+        StringBuilder q = new StringBuilder("select ");
+        q.append(column).append(", ").append(row).append(", count(*), sum(").append(xColumn).append("), sum(").append(yColumn).append(")");
+        q.append(" from ").append(tableName);
+        q.append(" where ").append(xColumn).append(" is not null and ").append(yColumn).append(" is not null");
+        if (where != null) {
+            q.append(" and (").append(where).append(")");
+        }
+        q.append(" group by ").append(column).append(", ").append(row);
+        return q.toString();
+    }
+
+    public void add(double x, double y) {
+        add((long) Math.floor(x / cellSize), (long) Math.floor(y / cellSize), 1, x, y);
+    }
+
+    /**
+     * Add points to a cell.
+     *
+     * @param count number of points
+     * @param sumX sum of the x coordinates of the points
+     * @param sumY sum of the y coordinates of the points
+     */
+    public void add(long column, long row, int count, double sumX, double sumY) {
+        Long key = (column << 32) | (row & 0xffffffffL);
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell(column, row);
+            cells.put(key, cell);
+        }
+        cell.count += count;
+        cell.sumX += sumX;
+        cell.sumY += sumY;
+    }
+
+    /**
+     * @return a feature for every cell with points
+     */
+    public FeatureReader<SimpleFeatureType, SimpleFeature> getReader() {
+        List<SimpleFeature> features = new ArrayList<>(cells.size());
+        String prefix = featureType.getTypeName() + ".cell.";
+        for (Cell cell : cells.values()) {
+            Point centroid = geometryFactory.createPoint(new Coordinate(cell.sumX / cell.count, cell.sumY / cell.count));
+            features.add(new SimpleFeatureImpl(new Object[]{centroid, cell.count}, featureType,
+                    new FeatureIdImpl(prefix + cell.column + "_" + cell.row), false));
+        }
+        return new CollectionFeatureReader(features, featureType);
+    }
+
+    private static class Cell {
+
+        final long column;
+        final long row;
+        int count;
+        double sumX;
+        double sumY;
+
+        Cell(long column, long row) {
+            this.column = column;
+            this.row = row;
+        }
+    }
+}
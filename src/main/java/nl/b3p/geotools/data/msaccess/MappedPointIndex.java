@@ -0,0 +1,258 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Point index stored in a sidecar file next to the database and read through
+ * a memory mapped buffer, so it survives restarts and stays off-heap.
+ *
+ * The points are sorted along a Hilbert curve and grouped in blocks of
+ * {@link #BLOCK_SIZE} points. As neighbouring blocks are close together,
+ * groups of {@link #NODE_SIZE} blocks, and groups of those, form a tree
+ * that is built in memory when opening the file. A query descends the tree
+ * and only scans the points of the blocks that intersect. File layout, big
+ * endian:
+ * <pre>
+ * header:  magic, version (int), source size, source mtime (long),
+ *          point count, block size, block count, reserved (int)
+ * blocks:  minx, maxx, miny, maxy (double) per block
+ * points:  x[count], y[count] (double), key[count] (long)
+ * </pre>
+ */
+public class MappedPointIndex implements PointIndex {
+
+    private static final Log log = LogFactory.getLog(MappedPointIndex.class);
+
+    static final int MAGIC = 0x42335049;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    public static final int BLOCK_SIZE = 64;
+    public static final int NODE_SIZE = 16;
+
+    private final int count;
+    private final int blockSize;
+    private final int blockCount;
+    private final DoubleBuffer blocks;
+    private final DoubleBuffer xs;
+    private final DoubleBuffer ys;
+    private final LongBuffer keys;
+    /**
+     * Bounds of the tree nodes per level, minx, maxx, miny, maxy per node;
+     * level 0 groups blocks, every next level groups nodes of the level
+     * before it.
+     */
+    private final double[][] nodes;
+
+    private MappedPointIndex(ByteBuffer buffer) throws IOException {
+        count = buffer.getInt(24);
+        blockSize = buffer.getInt(28);
+        blockCount = buffer.getInt(32);
+        long expected = HEADER_SIZE + blockCount * 32L + count * 24L;
+        if (buffer.capacity() != expected) {
+            throw new IOException("Point index file is truncated");
+        }
+        blocks = slice(buffer, HEADER_SIZE, blockCount * 32).asDoubleBuffer();
+        int points = HEADER_SIZE + blockCount * 32;
+        xs = slice(buffer, points, count * 8).asDoubleBuffer();
+        ys = slice(buffer, points + count * 8, count * 8).asDoubleBuffer();
+        keys = slice(buffer, points + count * 16, count * 8).asLongBuffer();
+        nodes = buildNodes();
+    }
+
+    private double[][] buildNodes() {
+        List<double[]> levels = new ArrayList<>();
+        DoubleBuffer children = blocks;
+        int childCount = blockCount;
+        while (childCount > 1) {
+            int nodeCount = (childCount + NODE_SIZE - 1) / NODE_SIZE;
+            double[] level = new double[nodeCount * 4];
+            for (int n = 0; n < nodeCount; n++) {
+                Envelope env = new Envelope();
+                for (int c = n * NODE_SIZE; c < Math.min(childCount, (n + 1) * NODE_SIZE); c++) {
+                    env.expandToInclude(children.get(c * 4), children.get(c * 4 + 2));
+                    env.expandToInclude(children.get(c * 4 + 1), children.get(c * 4 + 3));
+                }
+                level[n * 4] = env.getMinX();
+                level[n * 4 + 1] = env.getMaxX();
+                level[n * 4 + 2] = env.getMinY();
+                level[n * 4 + 3] = env.getMaxY();
+            }
+            levels.add(level);
+            children = DoubleBuffer.wrap(level);
+            childCount = nodeCount;
+        }
+        return levels.toArray(new double[levels.size()][]);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(offset);
+        dup.limit(offset + length);
+        return dup.slice();
+    }
+
+    /**
+     * Map an existing index file.
+     *
+     * @param stamp stamp of the database file, the index is only used if it
+     * was written for the same stamp
+     * @return the index, null if the file does not exist or is out of date
+     */
+    public static MappedPointIndex open(File file, SourceStamp stamp) {
+        if (stamp == null || !file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || !StampedFile.hasHeader(buffer, MAGIC, VERSION, stamp)) {
+                return null;
+            }
+            return new MappedPointIndex(buffer);
+        } catch (IOException ex) {
+            log.warn("Point index file " + file + " could not be read: " + ex.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write an index file for count points.
+     */
+    public static void write(File file, SourceStamp stamp, double[] x, double[] y, long[] key, int count) throws IOException {
+        Integer[] order = hilbertOrder(x, y, count);
+        int blockCount = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        StampedFile.write(file, MAGIC, VERSION, stamp, out -> {
+            out.writeInt(count);
+            out.writeInt(BLOCK_SIZE);
+            out.writeInt(blockCount);
+            out.writeInt(0);
+            for (int b = 0; b < blockCount; b++) {
+                Envelope env = new Envelope();
+                for (int i = b * BLOCK_SIZE; i < Math.min(count, (b + 1) * BLOCK_SIZE); i++) {
+                    env.expandToInclude(x[order[i]], y[order[i]]);
+                }
+                out.writeDouble(env.getMinX());
+                out.writeDouble(env.getMaxX());
+                out.writeDouble(env.getMinY());
+                out.writeDouble(env.getMaxY());
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeDouble(x[order[i]]);
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeDouble(y[order[i]]);
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeLong(key[order[i]]);
+            }
+        });
+    }
+
+    private static Integer[] hilbertOrder(double[] x, double[] y, int count) {
+        Envelope extent = new Envelope();
+        for (int i = 0; i < count; i++) {
+            extent.expandToInclude(x[i], y[i]);
+        }
+        final long[] h = new long[count];
+        double w = extent.getWidth() > 0 ? extent.getWidth() : 1;
+        double ht = extent.getHeight() > 0 ? extent.getHeight() : 1;
+        for (int i = 0; i < count; i++) {
+            int gx = (int) ((x[i] - extent.getMinX()) / w * 65535);
+            int gy = (int) ((y[i] - extent.getMinY()) / ht * 65535);
+            h[i] = hilbert(gx, gy);
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(h[a], h[b]));
+        return order;
+    }
+
+    /**
+     * @return distance along a Hilbert curve over a 65536 x 65536 grid
+     */
+    static long hilbert(int x, int y) {
+        final int n = 1 << 16;
+        long d = 0;
+        for (int s = n / 2; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    @Override
+    public List<Object> query(Envelope envelope) {
+        List<Object> result = new ArrayList<>();
+        int top = nodes.length - 1;
+        int topCount = top < 0 ? blockCount : nodes[top].length / 4;
+        for (int i = 0; i < topCount; i++) {
+            query(top, i, envelope, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param level level of the node in {@link #nodes}, -1 for a block
+     */
+    private void query(int level, int index, Envelope envelope, List<Object> result) {
+        double minX = envelope.getMinX();
+        double maxX = envelope.getMaxX();
+        double minY = envelope.getMinY();
+        double maxY = envelope.getMaxY();
+        int o = index * 4;
+        if (level < 0) {
+            if (blocks.get(o) > maxX || blocks.get(o + 1) < minX
+                    || blocks.get(o + 2) > maxY || blocks.get(o + 3) < minY) {
+                return;
+            }
+            int end = Math.min(count, (index + 1) * blockSize);
+            for (int i = index * blockSize; i < end; i++) {
+                double px = xs.get(i);
+                double py = ys.get(i);
+                if (px >= minX && px <= maxX && py >= minY && py <= maxY) {
+                    result.add(keys.get(i));
+                }
+            }
+            return;
+        }
+        double[] bounds = nodes[level];
+        if (bounds[o] > maxX || bounds[o + 1] < minX || bounds[o + 2] > maxY || bounds[o + 3] < minY) {
+            return;
+        }
+        int childCount = level == 0 ? blockCount : nodes[level - 1].length / 4;
+        for (int c = index * NODE_SIZE; c < Math.min(childCount, (index + 1) * NODE_SIZE); c++) {
+            query(level - 1, c, envelope, result);
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+}
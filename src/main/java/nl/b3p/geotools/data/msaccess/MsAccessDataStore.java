@@ -3,30 +3,75 @@
  */
 package nl.b3p.geotools.data.msaccess;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.geotools.data.DataStoreFactorySpi;
+import org.geotools.data.DataUtilities;
 import org.geotools.data.DefaultServiceInfo;
+import org.geotools.data.EmptyFeatureReader;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.FeatureWriter;
 import org.geotools.data.FileDataStore;
+import org.geotools.data.FilteringFeatureReader;
 import org.geotools.data.LockingManager;
+import org.geotools.data.MaxFeatureReader;
 import org.geotools.data.Query;
+import org.geotools.data.ReTypeFeatureReader;
 import org.geotools.data.ServiceInfo;
 import org.geotools.data.Transaction;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.sort.SortedFeatureReader;
+import org.geotools.feature.NameImpl;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.feature.visitor.AverageVisitor;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.TransformException;
 
 /**
  * DataStore for reading a DXF file produced by Autodesk.
@@ -40,8 +85,40 @@ import org.opengis.filter.Filter;
 public class MsAccessDataStore implements FileDataStore {
 
     private static final Log log = LogFactory.getLog(MsAccessDataStore.class);
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+    public static final int DEFAULT_POOL_IDLE_TIMEOUT = 300;
+    public static final int DEFAULT_POOL_BORROW_TIMEOUT = 30;
+    public static final int DEFAULT_SNAPSHOT_THRESHOLD = 3;
+
+    /**
+     * Above this number of candidates from the spatial index the x/y range
+     * predicates are used instead of key lookups.
+     */
+    public static final int MAX_INDEXED_KEYS = 10000;
+    /**
+     * Maximum number of keys in one IN list.
+     */
+    public static final int KEY_BATCH_SIZE = 250;
+    /**
+     * Minimum key range of a partition of a partitioned scan.
+     */
+    public static final int MIN_KEYS_PER_PARTITION = 1000;
+    /**
+     * Number of features passed from a partition to the reader at once.
+     */
+    public static final int PARTITION_BATCH_SIZE = 256;
+    /**
+     * Number of features decoded ahead at once by a prefetching reader.
+     */
+    public static final int PREFETCH_BATCH_SIZE = 256;
+    /**
+     * Maximum number of decoded batches waiting for a prefetching reader.
+     */
+    public static final int PREFETCH_CAPACITY = 4;
+
     private URL url;
-    private Connection dbConn;
+    private ConnectionProvider connectionProvider;
     private String controlerTable = null;
     private String controlerColumnName = null;
     private String controlerColumnType = null;
@@ -50,58 +127,82 @@ public class MsAccessDataStore implements FileDataStore {
     private String epsg = null;
     private String[] xLabels = null;
     private String[] yLabels = null;
+    private String[] keyLabels = null;
+    private String[] watermarkLabels = null;
+    private boolean deltaDeletes = false;
+    private DeltaReader deltaReader;
 
-    private Map featureReaderMap = new HashMap();
-    private Map featureTypeMap = new HashMap();
+    private final Set<MsAccessFeatureReader> openReaders = ConcurrentHashMap.newKeySet();
+    private final Map<String, SimpleFeatureType> featureTypeMap = new ConcurrentHashMap<>();
+    private final Map<String, RowMapping> rowMappingMap = new ConcurrentHashMap<>();
+    private final Map<String, String> keyColumnMap = new ConcurrentHashMap<>();
+    private volatile String identifierQuote = null;
+    private SpatialIndexManager spatialIndexManager = null;
+    private SnapshotCache snapshotCache = null;
+    private int snapshotThreshold = DEFAULT_SNAPSHOT_THRESHOLD;
+    private boolean schemaFile = false;
+    private int scanPartitions = 1;
+    private ExecutorService prefetchExecutor = null;
+    private MsAccessMetrics metrics = null;
+    private final Map<String, Object> snapshotLocks = new ConcurrentHashMap<>();
+    /**
+     * Type names read from the controller table, with the stamp of the
+     * database they were read from.
+     */
+    private volatile CachedTypeNames typeNames = null;
 
     public MsAccessDataStore(URL url) throws IOException {
-        this.url = url;
-        dbConn = getConnection();
+        this(url, AccessBackend.DEFAULT);
     }
 
-    protected Connection getConnection() throws IOException {
-        return getConnection(url);
+    public MsAccessDataStore(URL url, AccessBackend backend) throws IOException {
+        this(url, new PooledConnectionProvider(new BackendConnectionProvider(url, backend),
+                DEFAULT_POOL_SIZE, DEFAULT_POOL_IDLE_TIMEOUT * 1000L, DEFAULT_POOL_BORROW_TIMEOUT * 1000L));
     }
 
-    protected static Connection getConnection(URL url) throws IOException {
-        String msaccessFile = url.getFile().toLowerCase().substring(1);
-        try {
-            Class.forName("sun.jdbc.odbc.JdbcOdbcDriver").newInstance();
-        } catch (InstantiationException ex) {
-            log.error("JdbcOdbcDriver not found!", ex);
-            throw new IOException(ex.getLocalizedMessage());
-        } catch (IllegalAccessException ex) {
-            log.error("JdbcOdbcDriver not found!", ex);
-            throw new IOException(ex.getLocalizedMessage());
-        } catch (ClassNotFoundException ex) {
-            log.error("JdbcOdbcDriver not found!", ex);
-            throw new IOException(ex.getLocalizedMessage());
-        }
-        String myDB = "jdbc:odbc:Driver={Microsoft Access Driver (*.mdb)};DBQ=" + msaccessFile;
-        Connection conn = null;
-        try {
-            conn = DriverManager.getConnection(myDB, "yuit", "tyuityu");
-        } catch (SQLException ex) {
-            log.error("Connectionstring: " + myDB);
-            log.error("Connection not made!", ex);
-            throw new IOException(ex.getLocalizedMessage());
-        }
+    /**
+     * Connections are opened on first use, so creating a datastore does not
+     * fail when the database can not be opened yet.
+     */
+    public MsAccessDataStore(URL url, ConnectionProvider connectionProvider) throws IOException {
+        this.url = url;
+        this.connectionProvider = connectionProvider;
+    }
 
-//        Properties p = new Properties();
-//        p.put("test", "DRIVER={SQL Server};ServerName=itrackx;UID=defuser;PWD=password");
-//        String sConnect = new String("jdbc:itrackx://192.233.0.3/,");
-//        Class.forName("sun.jdbc.odbc.JdbcOdbcDriver");
-//        conn = DriverManager.getConnection(sConnect, p);
-//Problem: The account that is being used to access the page does not have access 
-//        to the HKEY_LOCAL_MACHINE\SOFTWARE\ODBC registry key.
-//
-//Solution:
-//http://support.microsoft.com/default.aspx?scid=kb;EN-US;Q295297
+    /**
+     * Borrow a connection from the connection provider, the caller must close
+     * it when done.
+     */
+    protected Connection getConnection() throws IOException {
+        if (metrics == null) {
+            return connectionProvider.getConnection();
+        }
+        long start = System.nanoTime();
+        Connection conn = connectionProvider.getConnection();
+        metrics.connectionBorrowed(System.nanoTime() - start);
         return conn;
     }
 
+    protected static Connection getConnection(URL url, AccessBackend backend) throws IOException {
+        return backend.getConnection(url);
+    }
+
     public MsAccessDataStore(Map dbconfig) throws IOException {
-        this((URL) dbconfig.get(MsAccessDataStoreFactory.PARAM_URL.key));
+        this(dbconfig, createConnectionProvider(dbconfig));
+    }
+
+    /**
+     * Create a datastore with the parameters of dbconfig reading through
+     * another connection provider, for example to another JDBC database with
+     * the same tables. The url and connection pool parameters are not used
+     * for connecting.
+     */
+    public MsAccessDataStore(Map dbconfig, ConnectionProvider connectionProvider) throws IOException {
+        this((URL) dbconfig.get(MsAccessDataStoreFactory.PARAM_URL.key), connectionProvider);
+        if (lookUpBoolean(dbconfig, MsAccessDataStoreFactory.PARAM_JMX, false)) {
+            metrics = new MsAccessMetrics(this, connectionProvider, String.valueOf(url));
+            metrics.register();
+        }
         controlerTable = (String) dbconfig.get(MsAccessDataStoreFactory.PARAM_CONTROLER_TABLE.key);
         controlerColumnName = (String) dbconfig.get(MsAccessDataStoreFactory.PARAM_CONTROLER_COLUMN_NAME.key);
         controlerColumnType = (String) dbconfig.get(MsAccessDataStoreFactory.PARAM_CONTROLER_COLUMN_TYPE.key);
@@ -115,35 +216,203 @@ public class MsAccessDataStore implements FileDataStore {
         String ylbs = (String) dbconfig.get(MsAccessDataStoreFactory.PARAM_YLABELS.key);
         xLabels = xlbs.split(",");
         yLabels = ylbs.split(",");
+        String klbs = (String) dbconfig.get(MsAccessDataStoreFactory.PARAM_KEYLABELS.key);
+        if (klbs != null && !klbs.trim().isEmpty()) {
+            keyLabels = klbs.split(",");
+        }
+        String wlbs = (String) dbconfig.get(MsAccessDataStoreFactory.PARAM_WATERMARKLABELS.key);
+        if (wlbs != null && !wlbs.trim().isEmpty()) {
+            watermarkLabels = wlbs.split(",");
+        }
+        deltaDeletes = lookUpBoolean(dbconfig, MsAccessDataStoreFactory.PARAM_DELTA_DELETES, false);
+        boolean sidecarIndex = lookUpBoolean(dbconfig, MsAccessDataStoreFactory.PARAM_SIDECAR_INDEX, false);
+        if (sidecarIndex || lookUpBoolean(dbconfig, MsAccessDataStoreFactory.PARAM_SPATIAL_INDEX, false)) {
+            spatialIndexManager = new SpatialIndexManager(this, getSourceFile(), sidecarIndex);
+        }
+        if (lookUpBoolean(dbconfig, MsAccessDataStoreFactory.PARAM_PREFETCH, false)) {
+            prefetchExecutor = WorkerThreads.newCachedExecutor("msaccess-prefetch");
+        }
+        scanPartitions = lookUpInt(dbconfig, MsAccessDataStoreFactory.PARAM_SCAN_PARTITIONS, 1);
+        schemaFile = lookUpBoolean(dbconfig, MsAccessDataStoreFactory.PARAM_SCHEMA_FILE, false);
+        if (lookUpBoolean(dbconfig, MsAccessDataStoreFactory.PARAM_PRELOAD_SCHEMAS, false)) {
+            if (lookUpBoolean(dbconfig, MsAccessDataStoreFactory.PARAM_PRELOAD_IN_BACKGROUND, false)) {
+                Thread loader = new Thread(() -> {
+                    try {
+                        warmUp();
+                    } catch (IOException ex) {
+                        log.warn("Schemas could not be loaded: " + ex.getLocalizedMessage());
+                    }
+                }, "msaccess-schema-loader");
+                loader.setDaemon(true);
+                loader.start();
+            } else {
+                warmUp();
+            }
+        }
+        int snapshotCacheSize = lookUpInt(dbconfig, MsAccessDataStoreFactory.PARAM_SNAPSHOT_CACHE_SIZE, 0);
+        if (snapshotCacheSize > 0 && getSourceFile() != null) {
+            snapshotCache = new SnapshotCache(snapshotCacheSize * 1024L * 1024L);
+            snapshotThreshold = lookUpInt(dbconfig, MsAccessDataStoreFactory.PARAM_SNAPSHOT_THRESHOLD, DEFAULT_SNAPSHOT_THRESHOLD);
+        }
+    }
+
+    private static ConnectionProvider createConnectionProvider(Map dbconfig) throws IOException {
+        URL url = (URL) dbconfig.get(MsAccessDataStoreFactory.PARAM_URL.key);
+        AccessBackend backend = AccessBackend.forName((String) dbconfig.get(MsAccessDataStoreFactory.PARAM_BACKEND.key));
+        ConnectionProvider provider = new BackendConnectionProvider(url, backend);
+
+        int poolSize = lookUpInt(dbconfig, MsAccessDataStoreFactory.PARAM_POOL_SIZE, DEFAULT_POOL_SIZE);
+        if (poolSize <= 0) {
+            return provider;
+        }
+        int idleTimeout = lookUpInt(dbconfig, MsAccessDataStoreFactory.PARAM_POOL_IDLE_TIMEOUT, DEFAULT_POOL_IDLE_TIMEOUT);
+        int borrowTimeout = lookUpInt(dbconfig, MsAccessDataStoreFactory.PARAM_POOL_BORROW_TIMEOUT, DEFAULT_POOL_BORROW_TIMEOUT);
+        return new PooledConnectionProvider(provider, poolSize, idleTimeout * 1000L, borrowTimeout * 1000L);
+    }
+
+    static boolean lookUpBoolean(Map dbconfig, DataStoreFactorySpi.Param param, boolean defaultValue) throws IOException {
+        Object value = param.lookUp(dbconfig);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
     }
 
+    static int lookUpInt(Map dbconfig, DataStoreFactorySpi.Param param, int defaultValue) throws IOException {
+        Object value = param.lookUp(dbconfig);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    /**
+     * @return the tables listed in the controller table, or all tables
+     * without one. Cached until the database file changes; for a database
+     * that is not a local file they are read on every call.
+     */
     public String[] getTypeNames() throws IOException {
+        SourceStamp stamp = SourceStamp.of(getSourceFile());
+        CachedTypeNames cached = typeNames;
+        if (cached != null && stamp != null && stamp.equals(cached.stamp)) {
+            return cached.names.clone();
+        }
+        String[] names;
+        Connection conn = getConnection();
         try {
             if (controlerTable == null || controlerColumnName == null) {
-                return SpatialUtil.getTableNameArray(dbConn);
+                names = SpatialUtil.getTableNameArray(conn);
+            } else {
+                names = SpatialUtil.getLayerArray(controlerTable, controlerColumnName,
+                        controlerColumnType, controlerFilter, controlerFilterReverse, conn);
             }
-            return SpatialUtil.getLayerArray(controlerTable, controlerColumnName,
-                    controlerColumnType, controlerFilter, controlerFilterReverse, dbConn);
         } catch (SQLException ex) {
             throw new IOException(ex.getLocalizedMessage());
+        } finally {
+            SpatialUtil.closeQuietly(conn);
         }
+        if (names != null && stamp != null) {
+            typeNames = new CachedTypeNames(stamp, names);
+            return names.clone();
+        }
+        return names;
+    }
+
+    /**
+     * Read everything the first requests need: the type names, schemas,
+     * identifier quote and key columns.
+     */
+    public void warmUp() throws IOException {
+        long start = System.currentTimeMillis();
+        loadSchemas();
+        getIdentifierQuote();
+        String[] names = getTypeNames();
+        if (names != null) {
+            for (String typeName : names) {
+                if (featureTypeMap.containsKey(typeName)) {
+                    getKeyColumn(typeName);
+                }
+            }
+        }
+        log.debug("Warm-up of " + url + " done in " + (System.currentTimeMillis() - start) + " ms");
     }
 
     public SimpleFeatureType getSchema(String typeName) throws IOException {
-        if (featureTypeMap.containsKey(typeName)) {
-            return (SimpleFeatureType) featureTypeMap.get(typeName);
+        SimpleFeatureType cached = featureTypeMap.get(typeName);
+        if (metrics != null) {
+            metrics.schemaCache(cached != null);
+        }
+        if (cached != null) {
+            return cached;
         }
+        Connection conn = getConnection();
         try {
-            // TODO raar dat dit nodig is
-            if (dbConn.isClosed()) {
-                dbConn = getConnection();
+            long start = metrics == null ? 0 : System.nanoTime();
+            if (identifierQuote == null) {
+                identifierQuote = SpatialUtil.getIdentifierQuote(conn);
             }
-
-            SimpleFeatureType ft = SpatialUtil.createFeatureType(typeName, epsg, dbConn);
-            featureTypeMap.put(typeName, ft);
-            return ft;
+            SimpleFeatureType ft = SpatialUtil.createFeatureType(typeName, epsg, conn);
+            if (metrics != null) {
+                metrics.metadataLookup(System.nanoTime() - start);
+            }
+            if (ft == null) {
+                return null;
+            }
+            cached = featureTypeMap.putIfAbsent(typeName, ft);
+            return cached != null ? cached : ft;
         } catch (Exception ex) {
             throw new IOException(ex.getLocalizedMessage());
+        } finally {
+            SpatialUtil.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Build the feature types of all type names at once. The columns of all
+     * tables are read with a single metadata query, or from the schema file
+     * next to the database when enabled and up to date.
+     */
+    public void loadSchemas() throws IOException {
+        String[] typeNames = getTypeNames();
+        if (typeNames == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        File sourceFile = getSourceFile();
+        SourceStamp stamp = schemaFile ? SourceStamp.of(sourceFile) : null;
+        File file = stamp == null ? null : SchemaFile.forSource(sourceFile);
+        Map<String, Map<String, Integer>> columnTypes = file == null ? null : SchemaFile.read(file, stamp);
+        if (columnTypes == null) {
+            Connection conn = getConnection();
+            try {
+                if (identifierQuote == null) {
+                    identifierQuote = SpatialUtil.getIdentifierQuote(conn);
+                }
+                long lookupStart = metrics == null ? 0 : System.nanoTime();
+                columnTypes = SpatialUtil.getColumnTypes(Arrays.asList(typeNames), conn);
+                if (metrics != null) {
+                    metrics.metadataLookup(System.nanoTime() - lookupStart);
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex.getLocalizedMessage());
+            } finally {
+                SpatialUtil.closeQuietly(conn);
+            }
+            if (file != null) {
+                try {
+                    SchemaFile.write(file, stamp, columnTypes);
+                } catch (IOException ex) {
+                    log.warn("Schema file " + file + " could not be written: " + ex.getLocalizedMessage());
+                }
+            }
+        }
+        for (String typeName : typeNames) {
+            Map<String, Integer> columns = columnTypes.get(typeName);
+            if (columns == null || columns.isEmpty() || featureTypeMap.containsKey(typeName)) {
+                continue;
+            }
+            try {
+                featureTypeMap.putIfAbsent(typeName, SpatialUtil.createFeatureType(typeName, columns, epsg));
+            } catch (Exception ex) {
+                throw new IOException(ex.getLocalizedMessage());
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded " + featureTypeMap.size() + " schemas in " + (System.currentTimeMillis() - start) + " ms");
         }
     }
 
@@ -159,22 +428,230 @@ public class MsAccessDataStore implements FileDataStore {
 
     @Override
     public List<Name> getNames() throws IOException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        List<Name> names = new ArrayList<>();
+        String[] typeNames = getTypeNames();
+        if (typeNames != null) {
+            for (String typeName : typeNames) {
+                names.add(new NameImpl(typeName));
+            }
+        }
+        return names;
     }
 
+    /**
+     * Create a new reader with its own connection and cursor. Readers are not
+     * shared, every caller must close the reader it gets.
+     */
     public FeatureReader getFeatureReader(String typeName) throws IOException {
-        if (featureReaderMap.containsKey(typeName)) {
-            return (FeatureReader) featureReaderMap.get(typeName);
+        RowMapping mapping = getRowMapping(typeName);
+        return createReader(typeName, mapping,
+                Collections.singletonList(mapping.getSelect(typeName, getIdentifierQuote())), null);
+    }
+
+    /**
+     * Create a reader on a newly borrowed connection and register it as an
+     * open reader.
+     */
+    private MsAccessFeatureReader createReader(String typeName, RowMapping mapping,
+            List<String> queries, List<List<Object>> parameters) throws IOException {
+        // looking up the key may need a connection of its own, so before
+        // borrowing the one for the reader
+        String keyColumn = getKeyColumn(typeName);
+        MsAccessFeatureReader fr = new MsAccessFeatureReader(mapping, getConnection(), queries, parameters,
+                metrics == null ? null : metrics.forType(typeName));
+        if (keyColumn != null) {
+            fr.setFidAttribute(mapping.getFeatureType().indexOf(keyColumn));
         }
-        try {
-            FeatureReader fr = new MsAccessFeatureReader(getSchema(typeName), xLabels, yLabels, dbConn);
-            featureReaderMap.put(typeName, fr);
-            return fr;
-        } catch (Exception ex) {
-            throw new IOException(ex.getLocalizedMessage());
+        fr.registerIn(openReaders);
+        return fr;
+    }
+
+    /**
+     * @return a filter translator for a type, with Id filters translated to
+     * its key
+     */
+    private MsAccessFilterToSQL createFilterToSQL(String typeName, RowMapping mapping) throws IOException {
+        MsAccessFilterToSQL filterToSQL = new MsAccessFilterToSQL(mapping, getIdentifierQuote());
+        filterToSQL.setKeyColumn(getKeyColumn(typeName));
+        return filterToSQL;
+    }
+
+    /**
+     * @return the row mapping for a subset of the columns of a type, compiled
+     * on first use
+     */
+    protected RowMapping getRowMapping(String typeName, String[] propertyNames) throws IOException {
+        String key = typeName + "|" + String.join(",", propertyNames);
+        RowMapping mapping = rowMappingMap.get(key);
+        if (mapping == null) {
+            SimpleFeatureType schema = getRowMapping(typeName).getFeatureType();
+            SimpleFeatureType ft = SimpleFeatureTypeBuilder.retype(schema, propertyNames);
+            mapping = RowMapping.compile(ft, schema, xLabels, yLabels);
+            rowMappingMap.put(key, mapping);
+        }
+        return mapping;
+    }
+
+    /**
+     * @return the row mapping for a type, compiled on first use
+     */
+    protected RowMapping getRowMapping(String typeName) throws IOException {
+        RowMapping mapping = rowMappingMap.get(typeName);
+        if (mapping == null) {
+            SimpleFeatureType ft = getSchema(typeName);
+            if (ft == null) {
+                throw new IOException("Unknown type name: " + typeName);
+            }
+            mapping = RowMapping.compile(ft, xLabels, yLabels);
+            rowMappingMap.put(typeName, mapping);
+        }
+        return mapping;
+    }
+
+    /**
+     * @return the quote string for table and column names
+     */
+    public String getIdentifierQuote() throws IOException {
+        if (identifierQuote == null) {
+            Connection conn = getConnection();
+            try {
+                identifierQuote = SpatialUtil.getIdentifierQuote(conn);
+            } catch (SQLException ex) {
+                throw new IOException(ex.getLocalizedMessage());
+            } finally {
+                SpatialUtil.closeQuietly(conn);
+            }
+        }
+        return identifierQuote;
+    }
+
+    /**
+     * @return the database file, null if the url does not point to a local
+     * file
+     */
+    public File getSourceFile() {
+        if (url == null || !"file".equalsIgnoreCase(url.getProtocol())) {
+            return null;
+        }
+        return AccessBackend.toFile(url);
+    }
+
+    /**
+     * @return the primary key column of a type, or else the first of the
+     * configured key labels it has; null if it has none
+     */
+    public String getKeyColumn(String typeName) throws IOException {
+        String keyColumn = keyColumnMap.get(typeName);
+        if (keyColumn == null) {
+            SimpleFeatureType schema = getRowMapping(typeName).getFeatureType();
+            Connection conn = getConnection();
+            try {
+                keyColumn = SpatialUtil.getPrimaryKeyColumn(typeName, conn);
+            } catch (SQLException ex) {
+                throw new IOException(ex.getLocalizedMessage());
+            } finally {
+                SpatialUtil.closeQuietly(conn);
+            }
+            if ((keyColumn == null || schema.getDescriptor(keyColumn) == null) && keyLabels != null) {
+                keyColumn = null;
+                for (String label : keyLabels) {
+                    for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+                        if (keyColumn == null && descriptor.getLocalName().equalsIgnoreCase(label.trim())) {
+                            keyColumn = descriptor.getLocalName();
+                        }
+                    }
+                }
+            }
+            if (keyColumn == null || schema.getDescriptor(keyColumn) == null) {
+                keyColumn = "";
+            }
+            keyColumnMap.put(typeName, keyColumn);
+        }
+        return keyColumn.isEmpty() ? null : keyColumn;
+    }
+
+    /**
+     * Read a table into the snapshot cache now, instead of after it has been
+     * queried often enough.
+     *
+     * @return false if snapshots are disabled or the table does not fit in
+     * the cache
+     */
+    public boolean preloadSnapshot(String typeName) throws IOException {
+        return getSnapshot(typeName, true) != null;
+    }
+
+    /**
+     * @return the cached snapshot of a type, read when the type has been
+     * queried often enough and is not cached or the database file has
+     * changed; null if snapshots are disabled, the table does not fit in the
+     * cache or is not queried often enough
+     */
+    protected TableSnapshot getSnapshot(String typeName) throws IOException {
+        return getSnapshot(typeName, false);
+    }
+
+    /**
+     * @param load read the snapshot when it is not cached, whatever the
+     * number of queries on the type
+     */
+    private TableSnapshot getSnapshot(String typeName, boolean load) throws IOException {
+        if (snapshotCache == null) {
+            return null;
+        }
+        SourceStamp stamp = SourceStamp.of(getSourceFile());
+        if (stamp == null) {
+            return null;
+        }
+        TableSnapshot snapshot = snapshotCache.get(typeName, stamp);
+        if (metrics != null) {
+            metrics.snapshotCache(snapshot != null);
+        }
+        if (snapshot != null || snapshotCache.isRejected(typeName, stamp)) {
+            return snapshot;
+        }
+        if (!load && (snapshotThreshold <= 0 || snapshotCache.countQuery(typeName, stamp) < snapshotThreshold)) {
+            return null;
+        }
+        synchronized (snapshotLocks.computeIfAbsent(typeName, k -> new Object())) {
+            snapshot = snapshotCache.get(typeName, stamp);
+            if (snapshot != null || snapshotCache.isRejected(typeName, stamp)) {
+                return snapshot;
+            }
+            final RowMapping mapping = getRowMapping(typeName);
+            long start = System.currentTimeMillis();
+            String keyColumn = getKeyColumn(typeName);
+            final int fidAttribute = keyColumn == null ? -1 : mapping.getFeatureType().indexOf(keyColumn);
+            snapshot = executeQuery(mapping.getSelect(typeName, getIdentifierQuote()), null,
+                    rs -> TableSnapshot.read(mapping, rs, fidAttribute, snapshotCache.getMaxBytes()));
+            if (snapshot == null) {
+                log.info("Snapshot of " + typeName + " exceeds cache size of " + snapshotCache.getMaxBytes() + " bytes");
+                snapshotCache.reject(typeName, stamp);
+                return null;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Read snapshot of " + typeName + " with " + snapshot.size() + " rows ("
+                        + snapshot.getByteSize() + " bytes) in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            return snapshotCache.put(typeName, stamp, snapshot) ? snapshot : null;
         }
     }
 
+    /**
+     * @return the statistics of this datastore, null unless enabled with the
+     * jmx parameter
+     */
+    public MsAccessMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of readers that have been created and not yet closed
+     */
+    public int getOpenReaderCount() {
+        return openReaders.size();
+    }
+
     @Override
     public FeatureReader getFeatureReader() throws IOException {
         return null;
@@ -182,22 +659,833 @@ public class MsAccessDataStore implements FileDataStore {
 
     @Override
     public FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(Query query, Transaction t) throws IOException {
-        return getFeatureReader(query.getTypeName());
+        return getFeatureReader(query, scanPartitions > 1);
+    }
+
+    /**
+     * @param partitioned read a large table in key ranges on several
+     * connections, see {@link #getPartitionedReader}
+     */
+    private FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(Query query, boolean partitioned) throws IOException {
+        String typeName = query.getTypeName();
+        RowMapping mapping = getRowMapping(typeName);
+        SimpleFeatureType schema = mapping.getFeatureType();
+
+        SortBy[] sortBy = query.getSortBy() == null ? new SortBy[0] : query.getSortBy();
+        int offset = query.getStartIndex() == null ? 0 : query.getStartIndex();
+        int maxFeatures = query.isMaxFeaturesUnlimited() ? -1 : query.getMaxFeatures();
+        boolean paged = offset > 0 || maxFeatures >= 0;
+
+        MsAccessFilterToSQL filterToSQL = createFilterToSQL(typeName, mapping);
+        // batches of keys would not be sorted or paged as a whole
+        filterToSQL.setBatchIds(sortBy.length == 0 && !paged);
+        filterToSQL.encode(query.getFilter());
+        Filter postFilter = filterToSQL.getPostFilter();
+
+        double cellSize = getGridCellSize(query);
+        if (cellSize > 0 && schema.getGeometryDescriptor() != null) {
+            return getGridReader(query, mapping, filterToSQL, cellSize);
+        }
+
+        SimpleFeatureType resultType = query.retrieveAllProperties() ? schema
+                : SimpleFeatureTypeBuilder.retype(schema, query.getPropertyNames());
+        if (maxFeatures == 0) {
+            return reproject(query, resultType, new EmptyFeatureReader<>(resultType));
+        }
+
+        // serve the whole query from memory when the table is cached
+        TableSnapshot snapshot = sortBy.length == 0 ? getSnapshot(typeName) : null;
+        if (snapshot != null) {
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader
+                    = new SnapshotFeatureReader(snapshot, query.getFilter(), filterToSQL.getBBOXEnvelope());
+            if (!query.retrieveAllProperties()) {
+                reader = new ReTypeFeatureReader(reader, resultType, false);
+            }
+            return reproject(query, resultType, page(reader, offset, maxFeatures));
+        }
+
+        // sort with ORDER BY and page with TOP, or with a condition on the
+        // key when sorted by key, instead of skipping rows
+        List<String> orderBy = Collections.emptyList();
+        boolean sortInMemory = false;
+        if (sortBy.length > 0 || paged) {
+            orderBy = getOrderBy(typeName, schema, sortBy, paged);
+            if (orderBy == null) {
+                if (!SortedFeatureReader.canSort(schema, sortBy)) {
+                    throw new IOException("Features of " + typeName + " can not be sorted by " + Arrays.toString(sortBy));
+                }
+                // for example on the geometry, sorted after reading all rows
+                log.debug("Sort of " + typeName + " can not be done in SQL, sorting in memory");
+                orderBy = Collections.emptyList();
+                sortInMemory = true;
+            }
+        }
+
+        // only select the requested columns, plus those needed by the post
+        // filter and the sort
+        RowMapping readMapping = mapping;
+        if (!query.retrieveAllProperties()) {
+            String[] propertyNames = query.getPropertyNames();
+            Set<String> readNames = new LinkedHashSet<>(Arrays.asList(propertyNames));
+            if (postFilter != Filter.INCLUDE) {
+                readNames.addAll(Arrays.asList(DataUtilities.attributeNames(postFilter, schema)));
+            }
+            if (sortInMemory) {
+                for (SortBy sort : sortBy) {
+                    AttributeDescriptor descriptor = sort.getPropertyName() == null ? null
+                            : schema.getDescriptor(sort.getPropertyName().getPropertyName());
+                    if (descriptor != null) {
+                        readNames.add(descriptor.getLocalName());
+                    }
+                }
+            }
+            // the feature ids are made from the key
+            if (getKeyColumn(typeName) != null) {
+                readNames.add(getKeyColumn(typeName));
+            }
+            readMapping = getRowMapping(typeName, readNames.toArray(new String[readNames.size()]));
+        }
+
+        String where = filterToSQL.getWhere();
+        List<Object> whereParameters = filterToSQL.getParameters();
+        int skip = offset;
+        int top = -1;
+        if (paged && postFilter == Filter.INCLUDE && !sortInMemory) {
+            String key = getKeyColumn(typeName) == null ? null : SpatialUtil.quote(getKeyColumn(typeName), getIdentifierQuote());
+            if (offset > 0 && key != null && orderBy.size() == 1 && orderBy.get(0).startsWith(key + " ")) {
+                boolean descending = orderBy.get(0).endsWith(" desc");
+                Object boundary = getPageBoundary(typeName, key, where, whereParameters, offset, descending);
+                if (boundary == null) {
+                    return reproject(query, resultType, new EmptyFeatureReader<>(resultType));
+                }
+                where = (where == null ? "" : "(" + where + ") and ") + key + (descending ? " < ?" : " > ?");
+                whereParameters = new ArrayList<>(whereParameters);
+                whereParameters.add(boundary);
+                skip = 0;
+                top = maxFeatures;
+            } else if (maxFeatures >= 0) {
+                top = offset + maxFeatures;
+            }
+        }
+
+        String select = readMapping.getSelect(typeName, getIdentifierQuote(), top);
+        StringBuilder q = new StringBuilder(select);
+        if (where != null) {
+            q.append(" where ").append(where);
+        }
+        StringBuilder orderByClause = new StringBuilder();
+        for (String item : orderBy) {
+            orderByClause.append(orderByClause.length() == 0 ? " order by " : ", ").append(item);
+        }
+        boolean ordered = orderByClause.length() > 0 || top >= 0;
+        List<String> queries = Collections.singletonList(q.toString() + orderByClause);
+        List<List<Object>> parameters = Collections.singletonList(whereParameters);
+
+        // fetch the rows of an Id filter, or the rows inside the bbox found
+        // in the spatial index, by key in batches
+        List<Object> keys = filterToSQL.getIds();
+        if (keys == null && spatialIndexManager != null && filterToSQL.getBBOXEnvelope() != null && !ordered) {
+            PointIndex index = spatialIndexManager.getIndex(typeName);
+            if (index != null) {
+                List<Object> found = index.query(filterToSQL.getBBOXEnvelope());
+                if (found.size() <= MAX_INDEXED_KEYS) {
+                    keys = found;
+                }
+            }
+        }
+        if (keys != null) {
+            if (keys.isEmpty()) {
+                return reproject(query, resultType, new EmptyFeatureReader<>(resultType));
+            }
+            queries = new ArrayList<>();
+            parameters = new ArrayList<>();
+            String keyColumn = SpatialUtil.quote(getKeyColumn(typeName), getIdentifierQuote());
+            for (List<Object> batch : batches(keys, KEY_BATCH_SIZE)) {
+                queries.add(select + " where " + (where == null ? "" : "(" + where + ") and ")
+                        + keyColumn + " in (" + parameterMarkers(batch.size()) + ")" + orderByClause);
+                List<Object> batchParameters = new ArrayList<>(whereParameters);
+                batchParameters.addAll(batch);
+                parameters.add(batchParameters);
+            }
+        }
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = null;
+        // only a scan of the whole table is worth the extra query for the
+        // key range and the connections
+        if (partitioned && where == null && queries.size() == 1 && !ordered) {
+            reader = getPartitionedReader(typeName, readMapping, select);
+        }
+        if (reader == null && prefetchExecutor != null) {
+            // decode rows on a worker thread ahead of the caller
+            final RowMapping prefetchMapping = readMapping;
+            final List<String> prefetchQueries = queries;
+            final List<List<Object>> prefetchParameters = parameters;
+            Callable<FeatureReader<SimpleFeatureType, SimpleFeature>> source
+                    = () -> createReader(typeName, prefetchMapping, prefetchQueries, prefetchParameters);
+            reader = new QueueFeatureReader(readMapping.getFeatureType(), Collections.singletonList(source),
+                    prefetchExecutor, false, PREFETCH_CAPACITY, PREFETCH_BATCH_SIZE);
+        }
+        if (reader == null) {
+            MsAccessFeatureReader fr = createReader(typeName, readMapping, queries, parameters);
+            // the in memory sort and the reprojection hold on to features
+            // read ahead, these must all be different instances
+            fr.setReuseFeatures(!sortInMemory && getReprojectCRS(query, resultType) == null
+                    && query.getHints() != null
+                    && Boolean.TRUE.equals(query.getHints().get(MsAccessHints.FEATURE_REUSE)));
+            reader = fr;
+        }
+        if (postFilter != Filter.INCLUDE) {
+            reader = new FilteringFeatureReader<>(reader, postFilter);
+        }
+        if (sortInMemory) {
+            reader = new SortedFeatureReader(DataUtilities.simple(reader), query);
+        }
+        reader = page(reader, skip, maxFeatures);
+        if (readMapping.getFeatureType().getAttributeCount() != resultType.getAttributeCount()) {
+            reader = new ReTypeFeatureReader(reader, resultType, false);
+        }
+        return reproject(query, resultType, reader);
+    }
+
+    /**
+     * @return the ORDER BY items for a sort, with the key column added to
+     * make the order the same for every page; null if a property can not be
+     * sorted on in SQL
+     */
+    private List<String> getOrderBy(String typeName, SimpleFeatureType schema, SortBy[] sortBy, boolean paged) throws IOException {
+        String keyColumn = getKeyColumn(typeName);
+        List<String> orderBy = new ArrayList<>();
+        boolean hasKey = false;
+        for (SortBy sort : sortBy) {
+            String column;
+            if (sort.getPropertyName() == null) {
+                // natural order
+                if (keyColumn == null) {
+                    continue;
+                }
+                column = keyColumn;
+            } else {
+                AttributeDescriptor descriptor = schema.getDescriptor(sort.getPropertyName().getPropertyName());
+                if (descriptor == null || descriptor instanceof GeometryDescriptor) {
+                    return null;
+                }
+                column = descriptor.getLocalName();
+            }
+            if (column.equals(keyColumn)) {
+                if (hasKey) {
+                    continue;
+                }
+                hasKey = true;
+            }
+            orderBy.add(SpatialUtil.quote(column, getIdentifierQuote())
+                    + (sort.getSortOrder() == SortOrder.DESCENDING ? " desc" : " asc"));
+        }
+        if ((paged || !orderBy.isEmpty()) && keyColumn != null && !hasKey) {
+            orderBy.add(SpatialUtil.quote(keyColumn, getIdentifierQuote()) + " asc");
+        }
+        return orderBy;
+    }
+
+    /**
+     * @return true if the features can be sorted, in SQL or in memory when a
+     * property can not be sorted on in SQL
+     */
+    public boolean canSort(SimpleFeatureType schema, SortBy[] sortBy) {
+        for (SortBy sort : sortBy) {
+            if (sort.getPropertyName() != null) {
+                AttributeDescriptor descriptor = schema.getDescriptor(sort.getPropertyName().getPropertyName());
+                if (descriptor == null || descriptor instanceof GeometryDescriptor) {
+                    return SortedFeatureReader.canSort(schema, sortBy);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the key of the last row before a page, reading only the keys of
+     * the preceding rows.
+     *
+     * @param key quoted key column
+     * @return the key, null if no rows match
+     */
+    private Object getPageBoundary(String typeName, String key, String where, List<Object> parameters,
+            int offset, boolean descending) throws IOException {
+        StringBuilder q = new StringBuilder("select ");
+        q.append(descending ? "min" : "max").append("(page_key) from (select top ").append(offset).append(" ");
+        q.append(key).append(" as page_key from ").append(SpatialUtil.quote(typeName, getIdentifierQuote()));
+        if (where != null) {
+            q.append(" where ").append(where);
+        }
+        q.append(" order by ").append(key).append(descending ? " desc" : " asc").append(") as page");
+        return executeQuery(q.toString(), parameters, rs -> rs.next() ? rs.getObject(1) : null);
+    }
+
+    /**
+     * Skip the first features and limit the number of features of a reader,
+     * for paging that could not be done in SQL.
+     *
+     * @param maxFeatures maximum number of features, negative for no limit
+     */
+    private static FeatureReader<SimpleFeatureType, SimpleFeature> page(FeatureReader<SimpleFeatureType, SimpleFeature> reader,
+            int offset, int maxFeatures) throws IOException {
+        try {
+            for (int i = 0; i < offset && reader.hasNext(); i++) {
+                reader.next();
+            }
+        } catch (IOException | RuntimeException ex) {
+            reader.close();
+            throw ex;
+        }
+        return maxFeatures < 0 ? reader : new MaxFeatureReader<>(reader, maxFeatures);
+    }
+
+    /**
+     * @return the cell size of the grid to aggregate to, 0 if the query does
+     * not ask for aggregation
+     */
+    static double getGridCellSize(Query query) {
+        Object value = query.getHints() == null ? null : query.getHints().get(MsAccessHints.GRID_CELL_SIZE);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    /**
+     * Aggregate the points matching a query to a grid. This is done in SQL,
+     * unless part of the filter can only be evaluated on features or the
+     * table is cached in memory. The sort, start index and maximum number of
+     * features of the query apply to the cells.
+     */
+    private FeatureReader<SimpleFeatureType, SimpleFeature> getGridReader(Query query, RowMapping mapping,
+            MsAccessFilterToSQL filterToSQL, double cellSize) throws IOException {
+        String typeName = query.getTypeName();
+        SimpleFeatureType schema = mapping.getFeatureType();
+        final GridAggregator grid = new GridAggregator(schema, cellSize);
+        if (filterToSQL.getPostFilter() == Filter.INCLUDE && filterToSQL.getIds() == null
+                && mapping.getXColumn() != null && mapping.getYColumn() != null && getSnapshot(typeName) == null) {
+            String q = grid.getSelect(SpatialUtil.quote(typeName, getIdentifierQuote()),
+                    SpatialUtil.quote(mapping.getXColumn(), getIdentifierQuote()),
+                    SpatialUtil.quote(mapping.getYColumn(), getIdentifierQuote()),
+                    filterToSQL.getWhere());
+            executeQuery(q, filterToSQL.getParameters(), rs -> {
+                while (rs.next()) {
+                    grid.add((long) rs.getDouble(1), (long) rs.getDouble(2), rs.getInt(3), rs.getDouble(4), rs.getDouble(5));
+                }
+                return null;
+            });
+        } else {
+            // read without the hints of the query, so never as reused features
+            Query points = new Query(typeName, query.getFilter(), new String[]{schema.getGeometryDescriptor().getLocalName()});
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader = getFeatureReader(points, Transaction.AUTO_COMMIT);
+            try {
+                while (reader.hasNext()) {
+                    Object geometry = reader.next().getDefaultGeometry();
+                    if (geometry instanceof Point) {
+                        grid.add(((Point) geometry).getX(), ((Point) geometry).getY());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = grid.getReader();
+        SortBy[] sortBy = query.getSortBy();
+        if (sortBy != null && sortBy.length > 0) {
+            if (!SortedFeatureReader.canSort(grid.getFeatureType(), sortBy)) {
+                throw new IOException("Grid cells of " + typeName + " can not be sorted by " + Arrays.toString(sortBy));
+            }
+            reader = new SortedFeatureReader(DataUtilities.simple(reader), query);
+        }
+        reader = page(reader, query.getStartIndex() == null ? 0 : query.getStartIndex(),
+                query.isMaxFeaturesUnlimited() ? -1 : query.getMaxFeatures());
+        return reproject(query, grid.getFeatureType(), reader);
+    }
+
+    /**
+     * @return the feature type of the features a query returns, built
+     * without running the query
+     */
+    public SimpleFeatureType getQueryType(Query query) throws IOException {
+        SimpleFeatureType schema = getRowMapping(query.getTypeName()).getFeatureType();
+        SimpleFeatureType type;
+        if (getGridCellSize(query) > 0 && schema.getGeometryDescriptor() != null) {
+            type = GridAggregator.createFeatureType(schema);
+        } else {
+            type = query.retrieveAllProperties() ? schema
+                    : SimpleFeatureTypeBuilder.retype(schema, query.getPropertyNames());
+        }
+        CoordinateReferenceSystem target = getReprojectCRS(query, type);
+        if (target != null && type.getGeometryDescriptor() != null) {
+            type = SimpleFeatureTypeBuilder.retype(type, target);
+        }
+        return type;
+    }
+
+    /**
+     * @return the CRS a query wants the features in, null if it does not ask
+     * for reprojection or the features are already in that CRS
+     */
+    private CoordinateReferenceSystem getReprojectCRS(Query query, SimpleFeatureType schema) {
+        CoordinateReferenceSystem target = query.getCoordinateSystemReproject();
+        CoordinateReferenceSystem source = getSourceCRS(query, schema);
+        if (target == null || source == null || CRS.equalsIgnoreMetadata(source, target)) {
+            return null;
+        }
+        return target;
+    }
+
+    private static CoordinateReferenceSystem getSourceCRS(Query query, SimpleFeatureType schema) {
+        return query.getCoordinateSystem() != null ? query.getCoordinateSystem() : schema.getCoordinateReferenceSystem();
+    }
+
+    /**
+     * Transform the features of a reader to the CRS the query asks for.
+     */
+    private FeatureReader<SimpleFeatureType, SimpleFeature> reproject(Query query, SimpleFeatureType schema,
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader) throws IOException {
+        CoordinateReferenceSystem target = getReprojectCRS(query, schema);
+        if (target == null || schema.getGeometryDescriptor() == null) {
+            return reader;
+        }
+        return new ReprojectingFeatureReader(reader, getSourceCRS(query, schema), target);
+    }
+
+    /**
+     * Split a scan of a table in ranges of its integer primary key, each read
+     * on its own connection and thread. Feature ids are built from the key so
+     * they do not depend on the partition a row was read by.
+     *
+     * At most half of the connections of the pool are used, leaving the
+     * others to other requests.
+     *
+     * @param select query selecting the columns of mapping, including the
+     * key, without a where clause
+     * @return the merged reader, null if the table has no integer key or
+     * too few keys to split
+     */
+    protected FeatureReader<SimpleFeatureType, SimpleFeature> getPartitionedReader(String typeName, final RowMapping mapping,
+            String select) throws IOException {
+        String keyColumn = getKeyColumn(typeName);
+        int keyAttribute = keyColumn == null ? -1 : mapping.getFeatureType().indexOf(keyColumn);
+        if (keyAttribute < 0 || mapping.getFeatureType().getDescriptor(keyAttribute).getType().getBinding() != Long.class) {
+            return null;
+        }
+        String key = SpatialUtil.quote(keyColumn, getIdentifierQuote());
+        String rangeQuery = "select min(" + key + "), max(" + key + ") from " + SpatialUtil.quote(typeName, getIdentifierQuote());
+        long[] range = executeQuery(rangeQuery, Collections.emptyList(), rs -> {
+            if (!rs.next()) {
+                return null;
+            }
+            long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[]{min, rs.getLong(2)};
+        });
+        int partitions = scanPartitions;
+        if (connectionProvider instanceof PooledConnectionProvider) {
+            partitions = Math.min(partitions, ((PooledConnectionProvider) connectionProvider).getMaxSize() / 2);
+        }
+        if (range == null || partitions < 2) {
+            return null;
+        }
+        long step = (range[1] - range[0]) / partitions;
+        if (step < MIN_KEYS_PER_PARTITION) {
+            return null;
+        }
+
+        List<Callable<FeatureReader<SimpleFeatureType, SimpleFeature>>> sources = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            final String partitionQuery = select + " where " + key + " between ? and ?";
+            final List<Object> partitionParameters = new ArrayList<>();
+            partitionParameters.add(range[0] + step * i);
+            partitionParameters.add(i == partitions - 1 ? range[1] : range[0] + step * (i + 1) - 1);
+            sources.add(() -> createReader(typeName, mapping,
+                    Collections.singletonList(partitionQuery), Collections.singletonList(partitionParameters)));
+        }
+        log.debug("Reading " + typeName + " in " + partitions + " partitions of " + step + " keys");
+        return new QueueFeatureReader(mapping.getFeatureType(), sources,
+                WorkerThreads.newExecutor("msaccess-scan", partitions), true, partitions * 4, PARTITION_BATCH_SIZE);
+    }
+
+    /**
+     * Read all features of many types in parallel and pass them to a sink.
+     * Every type is read by one worker on its own connection, without
+     * partitioning; the number of workers is limited by the size of the
+     * connection pool. When a type fails the other workers stop at the next
+     * feature and types not started yet are skipped.
+     *
+     * @param typeNames types to read, null for all type names
+     * @param parallelism maximum number of types read at the same time, 0
+     * for the number of processors
+     * @return the number of features read per type name
+     */
+    public Map<String, Integer> exportAll(String[] typeNames, int parallelism, final FeatureSink sink) throws IOException {
+        if (typeNames == null) {
+            typeNames = getTypeNames();
+        }
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        if (typeNames == null || typeNames.length == 0) {
+            return counts;
+        }
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        if (connectionProvider instanceof PooledConnectionProvider) {
+            parallelism = Math.min(parallelism, ((PooledConnectionProvider) connectionProvider).getMaxSize());
+        }
+        parallelism = Math.min(parallelism, typeNames.length);
+
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        ExecutorService executor = WorkerThreads.newExecutor("msaccess-export", parallelism);
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<Integer>, String> futures = new HashMap<>();
+        Map<String, Integer> done = new HashMap<>();
+        try {
+            for (final String typeName : typeNames) {
+                futures.put(completion.submit(() -> export(typeName, sink, cancelled)), typeName);
+            }
+            // in order of completion, to stop the others at the first failure
+            for (int i = 0; i < futures.size(); i++) {
+                Future<Integer> future = completion.take();
+                String typeName = futures.get(future);
+                try {
+                    done.put(typeName, future.get());
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                    throw new IOException("Export of " + typeName + " failed: " + cause.getLocalizedMessage(), cause);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted");
+        } finally {
+            if (done.size() < futures.size()) {
+                cancelled.set(true);
+                for (Future<Integer> future : futures.keySet()) {
+                    future.cancel(false);
+                }
+            }
+            // not shutdownNow(), interrupting a worker may close the channel
+            // of the database file that is shared by the pool
+            executor.shutdown();
+        }
+        for (String typeName : typeNames) {
+            counts.put(typeName, done.get(typeName));
+        }
+        return counts;
+    }
+
+    private int export(String typeName, FeatureSink sink, AtomicBoolean cancelled) throws IOException {
+        if (cancelled.get()) {
+            return 0;
+        }
+        // every worker uses a single connection, so partitioning could
+        // exhaust the pool
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = getFeatureReader(new Query(typeName), false);
+        int count = 0;
+        try {
+            sink.start(reader.getFeatureType());
+            while (reader.hasNext()) {
+                if (cancelled.get()) {
+                    return count;
+                }
+                sink.accept(reader.next());
+                count++;
+            }
+            sink.finish(reader.getFeatureType(), count);
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * Pass the features of a type that changed since the previous call to a
+     * sink, see {@link DeltaReader}. The watermarks are stored next to the
+     * database file, or in memory if it is not a local file.
+     *
+     * @return the number of changed features and the ids of deleted ones
+     */
+    public DeltaReader.Changes readChanges(String typeName, FeatureSink sink) throws IOException {
+        synchronized (this) {
+            if (deltaReader == null) {
+                File sourceFile = getSourceFile();
+                deltaReader = new DeltaReader(this, sourceFile == null ? null : DeltaReader.forSource(sourceFile),
+                        watermarkLabels, deltaDeletes);
+            }
+        }
+        return deltaReader.readChanges(typeName, sink);
+    }
+
+    /**
+     * Count the features matching a query with a SELECT COUNT(*).
+     *
+     * @return the number of features, -1 if the filter can not be evaluated
+     * completely in SQL
+     */
+    public int getCount(Query query) throws IOException {
+        if (getGridCellSize(query) > 0) {
+            return -1;
+        }
+        RowMapping mapping = getRowMapping(query.getTypeName());
+        MsAccessFilterToSQL filterToSQL = createFilterToSQL(query.getTypeName(), mapping);
+        if (!filterToSQL.encode(query.getFilter())) {
+            return -1;
+        }
+        StringBuilder q = new StringBuilder("select count(*) from ");
+        q.append(SpatialUtil.quote(query.getTypeName(), getIdentifierQuote()));
+        if (filterToSQL.getWhere() != null) {
+            q.append(" where ").append(filterToSQL.getWhere());
+        }
+        int count = executeQuery(q.toString(), filterToSQL.getParameters(), rs -> rs.next() ? rs.getInt(1) : 0);
+
+        if (query.getStartIndex() != null) {
+            count = Math.max(0, count - query.getStartIndex());
+        }
+        return Math.min(count, query.getMaxFeatures());
+    }
+
+    /**
+     * Calculate the bounds of the features matching a query with MIN/MAX over
+     * the x/y columns.
+     *
+     * @return the bounds, null if they can not be calculated in SQL
+     */
+    public ReferencedEnvelope getBounds(Query query) throws IOException {
+        RowMapping mapping = getRowMapping(query.getTypeName());
+        if (mapping.getXColumn() == null || mapping.getYColumn() == null
+                || !query.isMaxFeaturesUnlimited() || query.getStartIndex() != null
+                || getGridCellSize(query) > 0) {
+            return null;
+        }
+        MsAccessFilterToSQL filterToSQL = createFilterToSQL(query.getTypeName(), mapping);
+        if (!filterToSQL.encode(query.getFilter())) {
+            return null;
+        }
+        String x = SpatialUtil.quote(mapping.getXColumn(), getIdentifierQuote());
+        String y = SpatialUtil.quote(mapping.getYColumn(), getIdentifierQuote());
+        StringBuilder q = new StringBuilder("select min(");
+        q.append(x).append("), max(").append(x).append("), min(").append(y).append("), max(").append(y).append(") from ");
+        q.append(SpatialUtil.quote(query.getTypeName(), getIdentifierQuote()));
+        if (filterToSQL.getWhere() != null) {
+            q.append(" where ").append(filterToSQL.getWhere());
+        }
+        final CoordinateReferenceSystem crs = getSourceCRS(query, mapping.getFeatureType());
+        ReferencedEnvelope bounds = executeQuery(q.toString(), filterToSQL.getParameters(), rs -> {
+            if (!rs.next()) {
+                return new ReferencedEnvelope(crs);
+            }
+            double minX = rs.getDouble(1);
+            if (rs.wasNull()) {
+                return new ReferencedEnvelope(crs);
+            }
+            return new ReferencedEnvelope(minX, rs.getDouble(2), rs.getDouble(3), rs.getDouble(4), crs);
+        });
+        CoordinateReferenceSystem target = getReprojectCRS(query, mapping.getFeatureType());
+        if (target == null) {
+            return bounds;
+        }
+        if (bounds.isEmpty()) {
+            return new ReferencedEnvelope(target);
+        }
+        try {
+            return bounds.transform(target, true);
+        } catch (TransformException | FactoryException ex) {
+            throw new IOException(ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Evaluate a count, min, max, sum, average or unique visitor on the
+     * features matching a query with a single aggregate query. Only plain
+     * attribute columns can be aggregated, this includes the x/y columns.
+     *
+     * @return false if the visitor is not supported or the query can not be
+     * evaluated completely in SQL, the visitor is not used then
+     */
+    public boolean aggregate(Query query, FeatureVisitor visitor) throws IOException {
+        if (!query.isMaxFeaturesUnlimited() || query.getStartIndex() != null || getGridCellSize(query) > 0) {
+            return false;
+        }
+        RowMapping mapping = getRowMapping(query.getTypeName());
+        SimpleFeatureType schema = mapping.getFeatureType();
+
+        String function;
+        Expression expression = null;
+        if (visitor instanceof CountVisitor) {
+            function = "count(*)";
+        } else if (visitor instanceof MinVisitor) {
+            function = "min";
+            expression = ((MinVisitor) visitor).getExpression();
+        } else if (visitor instanceof MaxVisitor) {
+            function = "max";
+            expression = ((MaxVisitor) visitor).getExpression();
+        } else if (visitor instanceof SumVisitor) {
+            function = "sum";
+            expression = ((SumVisitor) visitor).getExpression();
+        } else if (visitor instanceof AverageVisitor) {
+            function = "avg";
+            expression = ((AverageVisitor) visitor).getExpression();
+        } else if (visitor instanceof UniqueVisitor) {
+            function = "distinct";
+            expression = ((UniqueVisitor) visitor).getExpression();
+        } else {
+            return false;
+        }
+
+        Class<?> binding = null;
+        String column = null;
+        if (expression != null) {
+            if (!(expression instanceof PropertyName)) {
+                return false;
+            }
+            AttributeDescriptor descriptor = schema.getDescriptor(((PropertyName) expression).getPropertyName());
+            if (descriptor == null || descriptor instanceof GeometryDescriptor) {
+                return false;
+            }
+            binding = descriptor.getType().getBinding();
+            if (("sum".equals(function) || "avg".equals(function)) && !Number.class.isAssignableFrom(binding)) {
+                return false;
+            }
+            column = SpatialUtil.quote(descriptor.getLocalName(), getIdentifierQuote());
+        }
+
+        MsAccessFilterToSQL filterToSQL = createFilterToSQL(query.getTypeName(), mapping);
+        if (!filterToSQL.encode(query.getFilter())) {
+            return false;
+        }
+        StringBuilder q = new StringBuilder("select ");
+        if (column == null) {
+            q.append(function);
+        } else if ("distinct".equals(function)) {
+            q.append("distinct ").append(column);
+        } else if ("avg".equals(function)) {
+            // count and sum, so the result can be merged with other averages
+            q.append("count(").append(column).append("), sum(").append(column).append(")");
+        } else {
+            q.append(function).append("(").append(column).append(")");
+        }
+        q.append(" from ").append(SpatialUtil.quote(query.getTypeName(), getIdentifierQuote()));
+        if (filterToSQL.getWhere() != null) {
+            q.append(" where ").append(filterToSQL.getWhere());
+        }
+
+        final Class<?> valueBinding = binding;
+        if (visitor instanceof CountVisitor) {
+            int count = executeQuery(q.toString(), filterToSQL.getParameters(), rs -> rs.next() ? rs.getInt(1) : 0);
+            ((CountVisitor) visitor).setValue(count);
+        } else if (visitor instanceof UniqueVisitor) {
+            UniqueVisitor unique = (UniqueVisitor) visitor;
+            final int skip = unique.getStartIndex() == null ? 0 : unique.getStartIndex();
+            final int max = unique.getMaxFeatures() == null ? -1 : unique.getMaxFeatures();
+            if (skip > 0 || max >= 0) {
+                // a page of the sorted values, skipping rows here as TOP
+                // counts the null value
+                q.append(" order by ").append(column);
+            }
+            Set<Object> values = executeQuery(q.toString(), filterToSQL.getParameters(), rs -> {
+                Set<Object> result = new LinkedHashSet<>();
+                int skipped = 0;
+                while ((max < 0 || result.size() < max) && rs.next()) {
+                    Object value = rs.getObject(1);
+                    if (value != null && skipped++ >= skip) {
+                        result.add(Converters.convert(value, valueBinding));
+                    }
+                }
+                return result;
+            });
+            ((UniqueVisitor) visitor).setValue(values);
+        } else if (visitor instanceof AverageVisitor) {
+            Object[] countAndSum = executeQuery(q.toString(), filterToSQL.getParameters(),
+                    rs -> rs.next() ? new Object[]{rs.getInt(1), rs.getObject(2)} : null);
+            if (countAndSum != null && countAndSum[1] != null) {
+                ((AverageVisitor) visitor).setValue((Integer) countAndSum[0],
+                        Converters.convert(countAndSum[1], Double.class));
+            }
+        } else {
+            Object value = executeQuery(q.toString(), filterToSQL.getParameters(), rs -> rs.next() ? rs.getObject(1) : null);
+            if (value != null) {
+                // a sum of an integer column may be returned as a decimal
+                Class<?> target = visitor instanceof SumVisitor && !(value instanceof Integer || value instanceof Long)
+                        && (valueBinding == Integer.class || valueBinding == Long.class) ? Long.class : valueBinding;
+                value = Converters.convert(value, target);
+                if (visitor instanceof MinVisitor) {
+                    ((MinVisitor) visitor).setValue(value);
+                } else if (visitor instanceof MaxVisitor) {
+                    ((MaxVisitor) visitor).setValue(value);
+                } else {
+                    ((SumVisitor) visitor).setValue(value);
+                }
+            }
+        }
+        return true;
+    }
+
+    static List<List<Object>> batches(List<Object> values, int size) {
+        List<List<Object>> batches = new ArrayList<>();
+        for (int i = 0; i < values.size(); i += size) {
+            batches.add(values.subList(i, Math.min(values.size(), i + size)));
+        }
+        return batches;
+    }
+
+    static String parameterMarkers(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? ", ?" : "?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Run a query on a pooled connection.
+     */
+    protected <T> T executeQuery(String q, List<Object> parameters, ResultSetHandler<T> handler) throws IOException {
+        log.debug("query: " + q);
+        Connection conn = getConnection();
+        try {
+            PreparedStatement statement = conn.prepareStatement(q);
+            try {
+                if (parameters != null) {
+                    for (int i = 0; i < parameters.size(); i++) {
+                        statement.setObject(i + 1, parameters.get(i));
+                    }
+                }
+                ResultSet rs = statement.executeQuery();
+                return handler.handle(rs);
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException ex) {
+            throw new IOException(ex.getLocalizedMessage());
+        } finally {
+            SpatialUtil.closeQuietly(conn);
+        }
+    }
+
+    protected interface ResultSetHandler<T> {
+
+        T handle(ResultSet rs) throws SQLException;
     }
 
     @Override
     public SimpleFeatureSource getFeatureSource() throws IOException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        String[] typeNames = getTypeNames();
+        if (typeNames == null || typeNames.length == 0) {
+            throw new IOException("No tables found in " + url);
+        }
+        return getFeatureSource(typeNames[0]);
     }
 
     @Override
-    public SimpleFeatureSource getFeatureSource(String string) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public SimpleFeatureSource getFeatureSource(String typeName) throws IOException {
+        SimpleFeatureType schema = getSchema(typeName);
+        if (schema == null) {
+            throw new IOException("Unknown type name: " + typeName);
+        }
+        return new MsAccessFeatureSource(this, schema);
     }
 
     @Override
     public SimpleFeatureSource getFeatureSource(Name name) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return getFeatureSource(name.getLocalPart());
     }
 
     @Override
@@ -279,11 +1567,36 @@ public class MsAccessDataStore implements FileDataStore {
 
     @Override
     public void dispose() {
-        try {
-            this.dbConn.close();
-        } catch (SQLException | NullPointerException ex) {
-            log.debug("Mogelijk probleem met sluiten van DB verbinding", ex);
+        for (MsAccessFeatureReader reader : openReaders) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                log.debug("Mogelijk probleem met sluiten van reader", ex);
+            }
+        }
+        if (snapshotCache != null) {
+            snapshotCache.clear();
+        }
+        if (spatialIndexManager != null) {
+            spatialIndexManager.clear();
+        }
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdown();
+        }
+        if (metrics != null) {
+            metrics.unregister();
+        }
+        connectionProvider.dispose();
+    }
+
+    private static class CachedTypeNames {
+
+        final SourceStamp stamp;
+        final String[] names;
+
+        CachedTypeNames(SourceStamp stamp, String[] names) {
+            this.stamp = stamp;
+            this.names = names;
         }
-        this.dbConn = null;
     }
 }
@@ -33,6 +33,23 @@ public class MsAccessDataStoreFactory implements FileDataStoreFactorySpi {
     public static final DataStoreFactorySpi.Param PARAM_SRS = new Param("srs", String.class, "EPSG code of projection, e.g. EPSG:28992");  
     public static final DataStoreFactorySpi.Param PARAM_XLABELS = new Param("xlabels", String.class, "comma separated list of column names with x coordinates (one per type)");  
     public static final DataStoreFactorySpi.Param PARAM_YLABELS = new Param("ylabels", String.class, "comma separated list of column names with y coordinates (one per type)");  
+    public static final DataStoreFactorySpi.Param PARAM_KEYLABELS = new Param("keylabels", String.class, "comma separated list of column names used as feature id for tables without a primary key", false);
+    public static final DataStoreFactorySpi.Param PARAM_WATERMARKLABELS = new Param("watermarklabels", String.class, "comma separated list of autonumber or last modified column names for reading changed rows only", false);
+    public static final DataStoreFactorySpi.Param PARAM_DELTA_DELETES = new Param("deltaDeletes", Boolean.class, "also find deleted rows when reading changed rows of a table with watermark column, reads all keys", false, Boolean.FALSE);
+    public static final DataStoreFactorySpi.Param PARAM_POOL_SIZE = new Param("poolSize", Integer.class, "maximum number of pooled connections, 0 disables pooling", false, MsAccessDataStore.DEFAULT_POOL_SIZE);
+    public static final DataStoreFactorySpi.Param PARAM_POOL_IDLE_TIMEOUT = new Param("poolIdleTimeout", Integer.class, "seconds after which an idle pooled connection is closed", false, MsAccessDataStore.DEFAULT_POOL_IDLE_TIMEOUT);
+    public static final DataStoreFactorySpi.Param PARAM_POOL_BORROW_TIMEOUT = new Param("poolBorrowTimeout", Integer.class, "maximum seconds to wait for a free pooled connection", false, MsAccessDataStore.DEFAULT_POOL_BORROW_TIMEOUT);
+    public static final DataStoreFactorySpi.Param PARAM_SPATIAL_INDEX = new Param("spatialIndex", Boolean.class, "build an in-memory spatial index over the x/y columns of tables with a primary key", false, Boolean.FALSE);
+    public static final DataStoreFactorySpi.Param PARAM_SIDECAR_INDEX = new Param("sidecarIndex", Boolean.class, "store the spatial index in a memory mapped file next to the database, implies spatialIndex", false, Boolean.FALSE);
+    public static final DataStoreFactorySpi.Param PARAM_SNAPSHOT_CACHE_SIZE = new Param("snapshotCacheSize", Integer.class, "memory in MB for keeping whole tables in memory, 0 to always read from the database", false, 0);
+    public static final DataStoreFactorySpi.Param PARAM_SNAPSHOT_THRESHOLD = new Param("snapshotThreshold", Integer.class, "number of queries on a table after which it is kept in memory, 0 to only keep preloaded tables", false, MsAccessDataStore.DEFAULT_SNAPSHOT_THRESHOLD);
+    public static final DataStoreFactorySpi.Param PARAM_PRELOAD_SCHEMAS = new Param("preloadSchemas", Boolean.class, "build the schemas and look up the keys of all layers when the datastore is created", false, Boolean.FALSE);
+    public static final DataStoreFactorySpi.Param PARAM_PRELOAD_IN_BACKGROUND = new Param("preloadInBackground", Boolean.class, "do the preloading in a background thread, so the datastore is available at once", false, Boolean.FALSE);
+    public static final DataStoreFactorySpi.Param PARAM_SCHEMA_FILE = new Param("schemaFile", Boolean.class, "store the schemas in a file next to the database for faster startup", false, Boolean.FALSE);
+    public static final DataStoreFactorySpi.Param PARAM_SCAN_PARTITIONS = new Param("scanPartitions", Integer.class, "number of key ranges to read a whole large table in parallel, at most half the pool size, 1 to read with a single query", false, 1);
+    public static final DataStoreFactorySpi.Param PARAM_PREFETCH = new Param("prefetch", Boolean.class, "read and decode rows on a background thread ahead of the caller", false, Boolean.FALSE);
+    public static final DataStoreFactorySpi.Param PARAM_JMX = new Param("jmx", Boolean.class, "collect statistics and register them as JMX MBean", false, Boolean.FALSE);
+    public static final DataStoreFactorySpi.Param PARAM_BACKEND = new Param("backend", String.class, "storage backend: ucanaccess (pure Java, default) or odbc (JDBC-ODBC bridge, Windows only)", false, AccessBackend.DEFAULT.getName());
     
     public String getDisplayName() {
         return "MS Access database";
@@ -43,14 +60,15 @@ public class MsAccessDataStoreFactory implements FileDataStoreFactorySpi {
     }
 
     public String[] getFileExtensions() {
-        return new String[] {".mdb"};
+        return new String[] {".mdb", ".accdb"};
     }
 
     /**
      * @return true if the file of the f parameter exists
      */
     public boolean canProcess(URL f) {
-        return f.getFile().toLowerCase().endsWith(".mdb");  
+        String file = f.getFile().toLowerCase();
+        return file.endsWith(".mdb") || file.endsWith(".accdb");
     }
 
     /**
@@ -77,7 +95,9 @@ public class MsAccessDataStoreFactory implements FileDataStoreFactorySpi {
     }
 
     public Param[] getParametersInfo() {
-        return new Param[] {PARAM_URL};
+        return new Param[] {PARAM_URL, PARAM_BACKEND, PARAM_POOL_SIZE, PARAM_POOL_IDLE_TIMEOUT, PARAM_POOL_BORROW_TIMEOUT, PARAM_SPATIAL_INDEX, PARAM_SIDECAR_INDEX, PARAM_SNAPSHOT_CACHE_SIZE,
+            PARAM_SNAPSHOT_THRESHOLD,             PARAM_PRELOAD_SCHEMAS, PARAM_PRELOAD_IN_BACKGROUND, PARAM_SCHEMA_FILE, PARAM_SCAN_PARTITIONS, PARAM_PREFETCH, PARAM_JMX, PARAM_KEYLABELS,
+            PARAM_WATERMARKLABELS, PARAM_DELTA_DELETES};
     }
 
     public Map getImplementationHints() {
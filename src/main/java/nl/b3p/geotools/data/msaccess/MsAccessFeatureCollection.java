@@ -0,0 +1,334 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+import org.opengis.util.ProgressListener;
+
+/**
+ * Features of a query on a {@link MsAccessFeatureSource}. Every call to
+ * features() opens a new reader, size(), getBounds() and aggregate visitors
+ * are evaluated in SQL when the filter allows it.
+ */
+public class MsAccessFeatureCollection implements SimpleFeatureCollection {
+
+    private static final Log log = LogFactory.getLog(MsAccessFeatureCollection.class);
+
+    private static final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    private final MsAccessFeatureSource source;
+    private final Query query;
+    private SimpleFeatureType schema;
+
+    public MsAccessFeatureCollection(MsAccessFeatureSource source, Query query) {
+        this.source = source;
+        this.query = query;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    protected FeatureReader<SimpleFeatureType, SimpleFeature> reader() throws IOException {
+        return source.getDataStore().getFeatureReader(query, Transaction.AUTO_COMMIT);
+    }
+
+    @Override
+    public SimpleFeatureIterator features() {
+        try {
+            return new ReaderIterator(reader());
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public synchronized SimpleFeatureType getSchema() {
+        if (schema == null) {
+            if (query.retrieveAllProperties() && query.getCoordinateSystemReproject() == null
+                    && MsAccessDataStore.getGridCellSize(query) == 0) {
+                schema = source.getSchema();
+            } else {
+                try {
+                    schema = source.getDataStore().getQueryType(query);
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+        return schema;
+    }
+
+    @Override
+    public String getID() {
+        return source.getSchema().getTypeName();
+    }
+
+    @Override
+    public void accepts(FeatureVisitor visitor, ProgressListener progress) throws IOException {
+        if (source.getDataStore().aggregate(query, visitor)) {
+            if (progress != null) {
+                progress.started();
+                progress.complete();
+            }
+            return;
+        }
+        float size = progress == null ? 0 : size();
+        float position = 0;
+        if (progress != null) {
+            progress.started();
+        }
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = reader();
+        try {
+            while (reader.hasNext()) {
+                if (progress != null) {
+                    if (progress.isCanceled()) {
+                        break;
+                    }
+                    progress.progress(size > 0 ? position++ / size * 100f : 0f);
+                }
+                visitor.visit(reader.next());
+            }
+        } finally {
+            reader.close();
+            if (progress != null) {
+                progress.complete();
+            }
+        }
+    }
+
+    @Override
+    public SimpleFeatureCollection subCollection(Filter filter) {
+        Query sub = new Query(query);
+        sub.setFilter(query.getFilter() == null || query.getFilter() == Filter.INCLUDE
+                ? filter : ff.and(query.getFilter(), filter));
+        return new MsAccessFeatureCollection(source, sub);
+    }
+
+    /**
+     * Sort the features in the database, or in memory when the property can
+     * not be sorted on in SQL or the query is paged.
+     */
+    @Override
+    public SimpleFeatureCollection sort(SortBy order) {
+        // a paged query would select other features when sorted differently
+        boolean paged = !query.isMaxFeaturesUnlimited() || query.getStartIndex() != null;
+        if (!paged && source.getQueryCapabilities().supportsSorting(new SortBy[]{order})) {
+            Query sorted = new Query(query);
+            sorted.setSortBy(new SortBy[]{order});
+            return new MsAccessFeatureCollection(source, sorted);
+        }
+        List<SimpleFeature> features = toList();
+        Comparator<SimpleFeature> comparator;
+        if (order.getPropertyName() == null) {
+            // natural order, the order of the keys in the feature ids
+            comparator = (f1, f2) -> compareIds(f1.getID(), f2.getID());
+        } else {
+            final String property = order.getPropertyName().getPropertyName();
+            comparator = (f1, f2) -> {
+                Comparable v1 = (Comparable) f1.getAttribute(property);
+                Comparable v2 = (Comparable) f2.getAttribute(property);
+                if (v1 == null) {
+                    return v2 == null ? 0 : -1;
+                }
+                return v2 == null ? 1 : v1.compareTo(v2);
+            };
+        }
+        features.sort(order.getSortOrder() == SortOrder.DESCENDING ? comparator.reversed() : comparator);
+        return new ListFeatureCollection(getSchema(), features);
+    }
+
+    /**
+     * Compare feature ids by the key after the type name, numerically when
+     * both keys are numbers.
+     */
+    private static int compareIds(String id1, String id2) {
+        if (id1 == null || id2 == null) {
+            return id1 == null ? (id2 == null ? 0 : -1) : 1;
+        }
+        String key1 = id1.substring(id1.lastIndexOf('.') + 1);
+        String key2 = id2.substring(id2.lastIndexOf('.') + 1);
+        try {
+            return Long.compare(Long.parseLong(key1), Long.parseLong(key2));
+        } catch (NumberFormatException ex) {
+            return id1.compareTo(id2);
+        }
+    }
+
+    @Override
+    public ReferencedEnvelope getBounds() {
+        try {
+            ReferencedEnvelope bounds = source.getBounds(query);
+            if (bounds != null) {
+                return bounds;
+            }
+        } catch (IOException ex) {
+            log.debug("Bounds could not be calculated in SQL", ex);
+        }
+        ReferencedEnvelope bounds = new ReferencedEnvelope(getSchema().getCoordinateReferenceSystem());
+        SimpleFeatureIterator it = features();
+        try {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                if (f.getDefaultGeometry() != null) {
+                    bounds.include(f.getBounds());
+                }
+            }
+        } finally {
+            it.close();
+        }
+        return bounds;
+    }
+
+    @Override
+    public int size() {
+        try {
+            int count = source.getCount(query);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (IOException ex) {
+            log.debug("Count could not be calculated in SQL", ex);
+        }
+        int count = 0;
+        SimpleFeatureIterator it = features();
+        try {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        SimpleFeatureIterator it = features();
+        try {
+            return !it.hasNext();
+        } finally {
+            it.close();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        SimpleFeatureIterator it = features();
+        try {
+            while (it.hasNext()) {
+                if (it.next().equals(o)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            it.close();
+        }
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object o : c) {
+            if (!contains(o)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return toList().toArray();
+    }
+
+    @Override
+    public <O> O[] toArray(O[] a) {
+        return toList().toArray(a);
+    }
+
+    /**
+     * @return all features, copied when the reader reuses a feature instance
+     */
+    private List<SimpleFeature> toList() {
+        boolean reused = query.getHints() != null
+                && Boolean.TRUE.equals(query.getHints().get(MsAccessHints.FEATURE_REUSE));
+        List<SimpleFeature> features = new ArrayList<>();
+        SimpleFeatureIterator it = features();
+        try {
+            while (it.hasNext()) {
+                features.add(reused ? SimpleFeatureBuilder.copy(it.next()) : it.next());
+            }
+        } finally {
+            it.close();
+        }
+        return features;
+    }
+
+    private static void closeQuietly(FeatureReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                log.debug("Mogelijk probleem met sluiten van reader", ex);
+            }
+        }
+    }
+
+    /**
+     * Iterator over a feature reader, closing the reader when done.
+     */
+    private static class ReaderIterator implements SimpleFeatureIterator {
+
+        private final FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+
+        ReaderIterator(FeatureReader<SimpleFeatureType, SimpleFeature> reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return reader.hasNext();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        @Override
+        public SimpleFeature next() throws NoSuchElementException {
+            try {
+                return reader.next();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(reader);
+        }
+    }
+}
@@ -3,16 +3,13 @@
  */
 package nl.b3p.geotools.data.msaccess;
 
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.PrecisionModel;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -21,158 +18,226 @@ import org.geotools.feature.IllegalAttributeException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import org.geotools.feature.simple.SimpleFeatureBuilder;
-import org.geotools.referencing.NamedIdentifier;
-import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.AttributeDescriptor;
-import org.opengis.feature.type.AttributeType;
-import org.opengis.feature.type.FeatureType;
-import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 /**
  * @author Matthijs Laan, B3Partners
  */
-public class MsAccessFeatureReader implements FeatureReader {
+public class MsAccessFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
 
     private static final Log log = LogFactory.getLog(MsAccessFeatureReader.class);
     private SimpleFeatureType ft;
+    private RowMapping mapping;
     private Connection conn;
     private ResultSet rs;
     private PreparedStatement statement;
-    private GeometryFactory geometryFactory;
-    private String[] xLabels;
-    private String[] yLabels;
     private int featureCount;
+    private Boolean nextAvailable;
+    private List<String> queries;
+    private List<List<Object>> parameters;
+    private int queryIndex = 0;
+    private int fidAttribute = -1;
+    private boolean reuseFeatures = false;
+    private RowFeature current;
+    private TypeMetrics metrics;
+    private long jdbcNanos;
+    private long decodeNanos;
+    private Set<MsAccessFeatureReader> registry;
+    private boolean closed = false;
     public static final PrecisionModel precisionModel = new PrecisionModel(PrecisionModel.FLOATING);
 
     public MsAccessFeatureReader(SimpleFeatureType ft, String[] xLabels, String[] yLabels, Connection dbConn) throws IOException {
-        this.conn = dbConn;
-        this.ft = ft;
-        this.xLabels = xLabels;
-        this.yLabels = yLabels;
-
-        CoordinateReferenceSystem crs = ft.getGeometryDescriptor().getCoordinateReferenceSystem();
-        int SRID = -1;
-        if (crs != null) {
-            try {
-                Set ident = crs.getIdentifiers();
-                if (ident != null && !ident.isEmpty()) {
-                    String code = ((NamedIdentifier) ident.toArray()[0]).getCode();
-                    SRID = Integer.parseInt(code);
-                }
-            } catch (Exception e) {
-                log.error("SRID could not be determined from crs!");
-            }
-        }
-        geometryFactory = new GeometryFactory(precisionModel, SRID);
+        this(RowMapping.compile(ft, xLabels, yLabels), dbConn, null);
+    }
+
+    /**
+     * @param mapping precompiled row mapping for the feature type
+     * @param dbConn connection to read from, closed when the reader is closed
+     * @param quote identifier quote string, null to not quote names
+     */
+    public MsAccessFeatureReader(RowMapping mapping, Connection dbConn, String quote) throws IOException {
+        this(mapping, dbConn, mapping.getSelect(mapping.getFeatureType().getTypeName(), quote), null);
+    }
 
-        String q = "select * from " + ft.getTypeName();
+    /**
+     * @param mapping precompiled row mapping for the feature type
+     * @param dbConn connection to read from, closed when the reader is closed
+     * @param q query selecting the columns of the mapping, in order
+     * @param parameters values for the parameter markers in q, may be null
+     */
+    public MsAccessFeatureReader(RowMapping mapping, Connection dbConn, String q, List<Object> parameters) throws IOException {
+        this(mapping, dbConn, Collections.singletonList(q), Collections.singletonList(parameters));
+    }
+
+    /**
+     * Read the results of several queries after each other, for example
+     * batches of keys in an IN list.
+     *
+     * @param mapping precompiled row mapping for the feature type
+     * @param dbConn connection to read from, closed when the reader is closed
+     * @param queries queries selecting the columns of the mapping, in order
+     * @param parameters values for the parameter markers per query, entries
+     * may be null
+     */
+    public MsAccessFeatureReader(RowMapping mapping, Connection dbConn, List<String> queries, List<List<Object>> parameters) throws IOException {
+        this(mapping, dbConn, queries, parameters, null);
+    }
+
+    /**
+     * @param metrics statistics to count the queries, rows and time spent
+     * reading in, null to not collect statistics
+     */
+    public MsAccessFeatureReader(RowMapping mapping, Connection dbConn, List<String> queries, List<List<Object>> parameters,
+            TypeMetrics metrics) throws IOException {
+        this.conn = dbConn;
+        this.mapping = mapping;
+        this.ft = mapping.getFeatureType();
+        this.queries = queries;
+        this.parameters = parameters;
+        this.metrics = metrics;
 
+        long start = metrics == null ? 0 : System.nanoTime();
         try {
-            statement = conn.prepareStatement(q);
-            rs = statement.executeQuery();
+            openNextQuery();
+            if (metrics != null) {
+                jdbcNanos += System.nanoTime() - start;
+            }
         } catch (SQLException ex) {
+            close();
             throw new IOException(ex.getLocalizedMessage());
         }
     }
 
-    public FeatureType getFeatureType() {
-        return (FeatureType)ft;
+    /**
+     * Close the current statement and execute the next query.
+     *
+     * @return false if there are no more queries
+     */
+    private boolean openNextQuery() throws SQLException {
+        if (statement != null) {
+            statement.close();
+            statement = null;
+            rs = null;
+        }
+        if (queryIndex >= queries.size()) {
+            return false;
+        }
+        String q = queries.get(queryIndex);
+        List<Object> queryParameters = parameters == null ? null : parameters.get(queryIndex);
+        queryIndex++;
+
+        log.debug("query: " + q);
+        statement = conn.prepareStatement(q);
+        if (queryParameters != null) {
+            for (int i = 0; i < queryParameters.size(); i++) {
+                statement.setObject(i + 1, queryParameters.get(i));
+            }
+        }
+        if (metrics == null) {
+            rs = statement.executeQuery();
+        } else {
+            long start = System.nanoTime();
+            rs = statement.executeQuery();
+            metrics.queryExecuted(System.nanoTime() - start);
+        }
+        return true;
     }
 
-    public Feature next() throws IOException, IllegalAttributeException, NoSuchElementException {
-        List foa = new ArrayList();
-
-        int xls = xLabels.length;
-        int yls = yLabels.length;
-        double x = 0.0;
-        double y = 0.0;
-        int addIndex = -1; // geom moet hier ingevoegd worden
-
-        //for (int i = 0; i < ac; i++) {
-        int i = 0;
-        for(AttributeDescriptor attributeDescriptor : ft.getAttributeDescriptors()){
-            String name = attributeDescriptor.getName().getLocalPart();
-
-            boolean isXLabel = false;
-            boolean isYLabel = false;
-            if (xls > 0 && yls > 0) {
-                for (int ix = 0; ix < xls; ix++) {
-                    if (name.equals(xLabels[ix].trim())) {
-                        isXLabel = true;
-                        break;
-                    }
-                }
-                for (int iy = 0; iy < yls; iy++) {
-                    if (name.equals(yLabels[iy].trim())) {
-                        isYLabel = true;
-                        break;
-                    }
-                }
-            }
+    public SimpleFeatureType getFeatureType() {
+        return ft;
+    }
 
-            if ("the_geom".equalsIgnoreCase(name)) {
-                addIndex = i;
-            } else {
-                Class atc = attributeDescriptor.getType().getBinding();
-                try {
-                    if (atc == Long.class) {
-                        foa.add(new Long(rs.getLong(name)));
-                    } else if (atc == Timestamp.class) {
-                        Timestamp ts = rs.getTimestamp(name);
-                        foa.add(ts);
-                    } else if (atc == Double.class) {
-                        Double val = new Double(rs.getDouble(name));
-                        if (val!=null && isXLabel) {
-                            x = val.doubleValue();
-                        }
-                        if (val!=null && isYLabel) {
-                            y = val.doubleValue();
-                        }
-                        foa.add(val);
-                    } else if (atc == String.class) {
-                        foa.add(rs.getString(name));
-                    } else if (atc == Object.class) {
-                        foa.add(rs.getObject(name));
-                    } else {
-                        foa.add(new Object());
-                    }
-                } catch (SQLException ex) {
-                    throw new NoSuchElementException(ex.getMessage());
-                }
-            }
-            i++;
+    public SimpleFeature next() throws IOException, IllegalAttributeException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features");
         }
-
-        if (addIndex >= 0) {
-            foa.add(addIndex, geometryFactory.createPoint(new Coordinate(x, y)));
+        nextAvailable = null;
+        long start = metrics == null ? 0 : System.nanoTime();
+        RowFeature f = reuseFeatures && current != null ? current : new RowFeature(mapping);
+        current = f;
+        try {
+            mapping.read(rs, f.getRow());
+        } catch (SQLException ex) {
+            throw new NoSuchElementException(ex.getMessage());
         }
-
-        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(ft);
-        return (Feature)fb.build(ft, foa, Integer.toString(featureCount++));
+        long read = metrics == null ? 0 : System.nanoTime();
+        Object key = fidAttribute >= 0 ? mapping.getValue(f.getRow(), fidAttribute) : null;
+        f.reset(key != null ? ft.getTypeName() + "." + key : Integer.toString(featureCount));
+        featureCount++;
+        if (metrics != null) {
+            jdbcNanos += read - start;
+            decodeNanos += System.nanoTime() - read;
+        }
+        return f;
     }
 
     public boolean hasNext() throws IOException {
+        if (nextAvailable != null) {
+            return nextAvailable;
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
         try {
-            return rs.next();
+            boolean available = rs != null && rs.next();
+            while (!available && openNextQuery()) {
+                available = rs.next();
+            }
+            nextAvailable = available;
+            if (metrics != null) {
+                jdbcNanos += System.nanoTime() - start;
+            }
+            return nextAvailable;
         } catch (SQLException ex) {
             throw new IOException(ex.getLocalizedMessage());
         }
     }
 
-    public void close() throws IOException {
+    /**
+     * Build feature ids from the value of a key attribute instead of the row
+     * number, so they do not depend on which reader returned a row.
+     *
+     * @param index index of the key attribute in the feature type
+     */
+    public void setFidAttribute(int index) {
+        this.fidAttribute = index;
+    }
+
+    /**
+     * Return the same feature instance for every row instead of a new one,
+     * for consumers that are done with a feature when they ask for the next.
+     */
+    public void setReuseFeatures(boolean reuseFeatures) {
+        this.reuseFeatures = reuseFeatures;
+    }
+
+    /**
+     * Add this reader to a registry of open readers, it is removed again when
+     * the reader is closed.
+     */
+    void registerIn(Set<MsAccessFeatureReader> registry) {
+        this.registry = registry;
+        registry.add(this);
+    }
+
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (metrics != null) {
+            metrics.rowsRead(featureCount, jdbcNanos, decodeNanos);
+        }
+        if (registry != null) {
+            registry.remove(this);
+        }
         try {
             if (statement != null) {
                 statement.close();
             }
-            if (conn != null) {
-                conn.close();
-            }
         } catch (SQLException ex) {
             throw new IOException(ex.getLocalizedMessage());
+        } finally {
+            SpatialUtil.closeQuietly(conn);
         }
-
     }
 }
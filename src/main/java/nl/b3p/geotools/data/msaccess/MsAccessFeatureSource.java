@@ -0,0 +1,180 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.awt.RenderingHints;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.geotools.data.FeatureListener;
+import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
+import org.geotools.data.ResourceInfo;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Read-only feature source for one table. Counts and bounds are computed in
+ * the database where the filter allows it.
+ */
+public class MsAccessFeatureSource implements SimpleFeatureSource {
+
+    private final MsAccessDataStore dataStore;
+    private final SimpleFeatureType schema;
+
+    public MsAccessFeatureSource(MsAccessDataStore dataStore, SimpleFeatureType schema) {
+        this.dataStore = dataStore;
+        this.schema = schema;
+    }
+
+    @Override
+    public Name getName() {
+        return schema.getName();
+    }
+
+    @Override
+    public ResourceInfo getInfo() {
+        return new ResourceInfo() {
+            @Override
+            public String getTitle() {
+                return schema.getTypeName();
+            }
+
+            @Override
+            public String getDescription() {
+                return null;
+            }
+
+            @Override
+            public String getName() {
+                return schema.getTypeName();
+            }
+
+            @Override
+            public Set<String> getKeywords() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public URI getSchema() {
+                return null;
+            }
+
+            @Override
+            public ReferencedEnvelope getBounds() {
+                try {
+                    return MsAccessFeatureSource.this.getBounds();
+                } catch (IOException ex) {
+                    return new ReferencedEnvelope(getCRS());
+                }
+            }
+
+            @Override
+            public CoordinateReferenceSystem getCRS() {
+                return schema.getCoordinateReferenceSystem();
+            }
+        };
+    }
+
+    @Override
+    public MsAccessDataStore getDataStore() {
+        return dataStore;
+    }
+
+    @Override
+    public QueryCapabilities getQueryCapabilities() {
+        return new QueryCapabilities() {
+            @Override
+            public boolean isOffsetSupported() {
+                return true;
+            }
+
+            @Override
+            public boolean supportsSorting(SortBy[] sortAttributes) {
+                return dataStore.canSort(schema, sortAttributes);
+            }
+
+            @Override
+            public boolean isReliableFIDSupported() {
+                try {
+                    return dataStore.getKeyColumn(schema.getTypeName()) != null;
+                } catch (IOException ex) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void addFeatureListener(FeatureListener listener) {
+        // read-only, features never change
+    }
+
+    @Override
+    public void removeFeatureListener(FeatureListener listener) {
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures() throws IOException {
+        return getFeatures(Query.ALL);
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures(Filter filter) throws IOException {
+        return getFeatures(new Query(schema.getTypeName(), filter));
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures(Query query) throws IOException {
+        return new MsAccessFeatureCollection(this, resolve(query));
+    }
+
+    @Override
+    public SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    @Override
+    public ReferencedEnvelope getBounds() throws IOException {
+        return getBounds(Query.ALL);
+    }
+
+    /**
+     * @return the bounds calculated in SQL, null if the query can not be
+     * evaluated in the database
+     */
+    @Override
+    public ReferencedEnvelope getBounds(Query query) throws IOException {
+        return dataStore.getBounds(resolve(query));
+    }
+
+    /**
+     * @return the count calculated in SQL, -1 if the query can not be
+     * evaluated in the database
+     */
+    @Override
+    public int getCount(Query query) throws IOException {
+        return dataStore.getCount(resolve(query));
+    }
+
+    @Override
+    public Set<RenderingHints.Key> getSupportedHints() {
+        return new HashSet<RenderingHints.Key>(Arrays.asList(MsAccessHints.FEATURE_REUSE, MsAccessHints.GRID_CELL_SIZE));
+    }
+
+    /**
+     * @return a copy of query for the type of this source
+     */
+    Query resolve(Query query) {
+        Query resolved = new Query(query);
+        resolved.setTypeName(schema.getTypeName());
+        return resolved;
+    }
+}
@@ -0,0 +1,695 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.ExcludeFilter;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.Id;
+import org.opengis.filter.IncludeFilter;
+import org.opengis.filter.Not;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.PropertyIsLike;
+import org.opengis.filter.PropertyIsNotEqualTo;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.identity.Identifier;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.spatial.BinarySpatialOperator;
+import org.opengis.filter.spatial.Contains;
+import org.opengis.filter.spatial.Crosses;
+import org.opengis.filter.spatial.Equals;
+import org.opengis.filter.spatial.Intersects;
+import org.opengis.filter.spatial.Overlaps;
+import org.opengis.filter.spatial.Touches;
+import org.opengis.filter.spatial.Within;
+import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Translates a GeoTools filter into an Access SQL where clause.
+ *
+ * BBOX and other spatial filters on the_geom become range predicates on the
+ * x/y columns, comparisons, LIKE, BETWEEN, null checks and AND/OR/NOT on
+ * plain columns are translated directly. A filter that equals on one column
+ * in every branch of an OR becomes an IN list, as does an Id filter when the
+ * key column is known. Whatever can not be
+ * translated exactly is returned as post filter, to be evaluated in memory.
+ */
+public class MsAccessFilterToSQL {
+
+    private static final Log log = LogFactory.getLog(MsAccessFilterToSQL.class);
+
+    private static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    private final RowMapping mapping;
+    private final SimpleFeatureType featureType;
+    private final String quote;
+
+    private String where = null;
+    private List<Object> parameters = new ArrayList<>();
+    private Filter postFilter = Filter.INCLUDE;
+    private Envelope bboxEnvelope = null;
+    private Envelope lastEnvelope = null;
+    /**
+     * Quoted columns of the clauses encoded so far that are unknown in SQL
+     * when the column is null, where GeoTools evaluates them to false.
+     */
+    private Set<String> unknownIfNull = new LinkedHashSet<>();
+    private String keyColumn = null;
+    private boolean batchIds = false;
+    private List<Object> ids = null;
+
+    /**
+     * @param mapping row mapping of the feature type the filter applies to
+     * @param quote identifier quote string
+     */
+    public MsAccessFilterToSQL(RowMapping mapping, String quote) {
+        this.mapping = mapping;
+        this.featureType = mapping.getFeatureType();
+        this.quote = quote;
+    }
+
+    /**
+     * Translate Id filters to the key column. Feature ids are the type name
+     * and the key separated by a dot.
+     *
+     * @param keyColumn key column, null if the table has none
+     */
+    public void setKeyColumn(String keyColumn) {
+        this.keyColumn = keyColumn;
+    }
+
+    /**
+     * Return the keys of a top level Id filter by {@link #getIds()} instead of
+     * adding them to the where clause, so they can be queried in batches.
+     */
+    public void setBatchIds(boolean batchIds) {
+        this.batchIds = batchIds;
+    }
+
+    /**
+     * @return keys selected by a top level Id filter when batching ids, null
+     * if there is none
+     */
+    public List<Object> getIds() {
+        return ids;
+    }
+
+    /**
+     * @return where clause without the "where" keyword, null if all rows
+     * must be selected. Parenthesize it when adding other clauses.
+     */
+    public String getWhere() {
+        return where;
+    }
+
+    /**
+     * @return values for the parameter markers in the where clause
+     */
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return the part of the filter that still has to be evaluated on the
+     * features read, Filter.INCLUDE if the where clause is exact
+     */
+    public Filter getPostFilter() {
+        return postFilter;
+    }
+
+    /**
+     * @return intersection of the top level BBOX filters in native
+     * coordinates, null if there are none
+     */
+    public Envelope getBBOXEnvelope() {
+        return bboxEnvelope;
+    }
+
+    /**
+     * Split a filter into a where clause and a post filter.
+     *
+     * @return true if the filter is translated completely
+     */
+    public boolean encode(Filter filter) {
+        where = null;
+        parameters = new ArrayList<>();
+        postFilter = Filter.INCLUDE;
+        bboxEnvelope = null;
+        unknownIfNull = new LinkedHashSet<>();
+        ids = null;
+        if (filter == null || filter instanceof IncludeFilter) {
+            return true;
+        }
+
+        List<Filter> children = filter instanceof And ? ((And) filter).getChildren() : Collections.singletonList(filter);
+        List<String> clauses = new ArrayList<>();
+        List<Filter> remaining = new ArrayList<>();
+        for (Filter child : children) {
+            if (child instanceof Id && batchIds && ids == null && getKeyDescriptor() != null) {
+                ids = getKeys((Id) child);
+                if (getKeyDescriptor().getType().getBinding() == String.class) {
+                    // Access compares strings case insensitive
+                    remaining.add(child);
+                }
+                continue;
+            }
+            List<Object> childParameters = new ArrayList<>();
+            boolean[] exact = new boolean[]{true};
+            lastEnvelope = null;
+            String sql = encodeFilter(child, childParameters, exact);
+            if (sql == null) {
+                remaining.add(child);
+                continue;
+            }
+            clauses.add(sql);
+            parameters.addAll(childParameters);
+            if (child instanceof BBOX && lastEnvelope != null) {
+                bboxEnvelope = bboxEnvelope == null ? lastEnvelope : bboxEnvelope.intersection(lastEnvelope);
+            }
+            if (!exact[0]) {
+                remaining.add(child);
+            }
+        }
+
+        if (clauses.size() == 1) {
+            where = clauses.get(0);
+        } else if (clauses.size() > 1) {
+            where = "(" + String.join(") and (", clauses) + ")";
+        }
+        if (remaining.size() == 1) {
+            postFilter = remaining.get(0);
+        } else if (remaining.size() > 1) {
+            postFilter = ff.and(remaining);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("where: " + where + ", post filter: " + postFilter);
+        }
+        return remaining.isEmpty();
+    }
+
+    /**
+     * @param exact set to false if the sql selects a superset of the filter
+     * @return sql or null if the filter can not be translated
+     */
+    private String encodeFilter(Filter filter, List<Object> params, boolean[] exact) {
+        if (filter instanceof IncludeFilter) {
+            return "1=1";
+        } else if (filter instanceof ExcludeFilter) {
+            return "1=0";
+        } else if (filter instanceof And || filter instanceof Or) {
+            return encodeLogic(filter, params, exact);
+        } else if (filter instanceof Not) {
+            return encodeNot((Not) filter, params, exact);
+        } else if (filter instanceof Id) {
+            return encodeId((Id) filter, params, exact);
+        } else if (filter instanceof BBOX) {
+            return encodeBBOX((BBOX) filter, params, exact);
+        } else if (filter instanceof Intersects || filter instanceof Within
+                || filter instanceof Contains || filter instanceof Overlaps
+                || filter instanceof Crosses || filter instanceof Touches
+                || filter instanceof Equals) {
+            // the envelope of the geometry selects a superset
+            exact[0] = false;
+            return encodeEnvelope((BinarySpatialOperator) filter, params, exact);
+        } else if (filter instanceof BinaryComparisonOperator) {
+            return encodeComparison((BinaryComparisonOperator) filter, params, exact);
+        } else if (filter instanceof PropertyIsLike) {
+            return encodeLike((PropertyIsLike) filter, params, exact);
+        } else if (filter instanceof PropertyIsBetween) {
+            return encodeBetween((PropertyIsBetween) filter, params);
+        } else if (filter instanceof PropertyIsNull) {
+            String column = getColumn(((PropertyIsNull) filter).getExpression());
+            return column == null ? null : column + " is null";
+        }
+        return null;
+    }
+
+    /**
+     * A negated clause is unknown in SQL when a column in it is null, where
+     * GeoTools negates false to true, so rows with nulls are added with "is
+     * null". For a negated single comparison that is exact, otherwise it
+     * selects a superset.
+     */
+    private String encodeNot(Not filter, List<Object> params, boolean[] exact) {
+        Set<String> outer = unknownIfNull;
+        unknownIfNull = new LinkedHashSet<>();
+        try {
+            boolean[] childExact = new boolean[]{true};
+            List<Object> childParams = new ArrayList<>();
+            Filter child = filter.getFilter();
+            String sql = encodeFilter(child, childParams, childExact);
+            // the negation of a superset is not a superset
+            if (sql == null || !childExact[0]) {
+                return null;
+            }
+            params.addAll(childParams);
+            if (unknownIfNull.isEmpty()) {
+                return "not (" + sql + ")";
+            }
+            if (unknownIfNull.size() > 1 || child instanceof And || child instanceof Or || child instanceof Not) {
+                exact[0] = false;
+            }
+            StringBuilder not = new StringBuilder("(not (").append(sql).append(")");
+            for (String column : unknownIfNull) {
+                not.append(" or ").append(column).append(" is null");
+            }
+            // never unknown, so no columns to add to the outer clause
+            return not.append(")").toString();
+        } finally {
+            unknownIfNull = outer;
+        }
+    }
+
+    private String encodeLogic(Filter filter, List<Object> params, boolean[] exact) {
+        boolean and = filter instanceof And;
+        List<Filter> children = and ? ((And) filter).getChildren() : ((Or) filter).getChildren();
+        if (!and) {
+            String in = encodeIn(children, params, exact);
+            if (in != null) {
+                return in;
+            }
+        }
+        List<String> clauses = new ArrayList<>();
+        List<Object> logicParams = new ArrayList<>();
+        for (Filter child : children) {
+            String sql = encodeFilter(child, logicParams, exact);
+            if (sql == null) {
+                return null;
+            }
+            clauses.add("(" + sql + ")");
+        }
+        params.addAll(logicParams);
+        // parenthesized, so it can be combined with other clauses
+        return "(" + String.join(and ? " and " : " or ", clauses) + ")";
+    }
+
+    /**
+     * Translate an OR of equals on the same column to an IN list.
+     */
+    private String encodeIn(List<Filter> children, List<Object> params, boolean[] exact) {
+        String column = null;
+        Boolean matchCase = null;
+        List<Object> values = new ArrayList<>();
+        for (Filter child : children) {
+            if (!(child instanceof PropertyIsEqualTo)) {
+                return null;
+            }
+            PropertyIsEqualTo equal = (PropertyIsEqualTo) child;
+            PropertyName property = propertyOf(equal.getExpression1(), equal.getExpression2());
+            Literal literal = literalOf(equal.getExpression1(), equal.getExpression2());
+            if (property == null || literal == null) {
+                return null;
+            }
+            String name = property.getPropertyName();
+            if ((column != null && !column.equals(name)) || (matchCase != null && matchCase != equal.isMatchingCase())) {
+                return null;
+            }
+            column = name;
+            matchCase = equal.isMatchingCase();
+            values.add(literal);
+        }
+        if (column == null || values.size() < 2) {
+            return null;
+        }
+        AttributeDescriptor descriptor = getDescriptor(column);
+        if (descriptor == null || !isSupported(descriptor)) {
+            return null;
+        }
+        Class binding = descriptor.getType().getBinding();
+        boolean string = binding == String.class;
+        List<Object> inParams = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(string && !matchCase ? "ucase(" + quoteColumn(descriptor) + ")" : quoteColumn(descriptor));
+        sql.append(" in (");
+        for (int i = 0; i < values.size(); i++) {
+            Object value = ((Literal) values.get(i)).evaluate(null, binding);
+            if (value == null) {
+                return null;
+            }
+            inParams.add(string && !matchCase ? value.toString().toUpperCase() : value);
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        sql.append(")");
+        if (string && matchCase) {
+            // Access compares strings case insensitive
+            exact[0] = false;
+        }
+        params.addAll(inParams);
+        unknownIfNull.add(quoteColumn(descriptor));
+        return sql.toString();
+    }
+
+    private String encodeId(Id filter, List<Object> params, boolean[] exact) {
+        AttributeDescriptor descriptor = getKeyDescriptor();
+        if (descriptor == null) {
+            return null;
+        }
+        List<Object> keys = getKeys(filter);
+        if (keys.isEmpty()) {
+            return "1=0";
+        }
+        if (descriptor.getType().getBinding() == String.class) {
+            exact[0] = false;
+        }
+        params.addAll(keys);
+        unknownIfNull.add(quoteColumn(descriptor));
+        return quoteColumn(descriptor) + " in (" + MsAccessDataStore.parameterMarkers(keys.size()) + ")";
+    }
+
+    private AttributeDescriptor getKeyDescriptor() {
+        return keyColumn == null ? null : featureType.getDescriptor(keyColumn);
+    }
+
+    /**
+     * @return the keys of the feature ids of a filter, leaving out ids that
+     * can not be converted to the type of the key
+     */
+    private List<Object> getKeys(Id filter) {
+        Class binding = getKeyDescriptor().getType().getBinding();
+        String prefix = featureType.getTypeName() + ".";
+        Set<Object> keys = new LinkedHashSet<>();
+        for (Identifier identifier : filter.getIdentifiers()) {
+            String fid = String.valueOf(identifier.getID());
+            if (fid.startsWith(prefix)) {
+                fid = fid.substring(prefix.length());
+            }
+            Object key = Converters.convert(fid, binding);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return new ArrayList<>(keys);
+    }
+
+    private String encodeComparison(BinaryComparisonOperator filter, List<Object> params, boolean[] exact) {
+        Expression e1 = filter.getExpression1();
+        Expression e2 = filter.getExpression2();
+        PropertyName property = propertyOf(e1, e2);
+        Literal literal = literalOf(e1, e2);
+        if (property == null || literal == null) {
+            return null;
+        }
+        boolean swapped = e1 instanceof Literal;
+
+        String operator;
+        if (filter instanceof PropertyIsEqualTo) {
+            operator = "=";
+        } else if (filter instanceof PropertyIsNotEqualTo) {
+            operator = "<>";
+        } else if (filter instanceof PropertyIsLessThan) {
+            operator = swapped ? ">" : "<";
+        } else if (filter instanceof PropertyIsLessThanOrEqualTo) {
+            operator = swapped ? ">=" : "<=";
+        } else if (filter instanceof PropertyIsGreaterThan) {
+            operator = swapped ? "<" : ">";
+        } else if (filter instanceof PropertyIsGreaterThanOrEqualTo) {
+            operator = swapped ? "<=" : ">=";
+        } else {
+            return null;
+        }
+
+        AttributeDescriptor descriptor = getDescriptor(property.getPropertyName());
+        if (descriptor == null || !isSupported(descriptor)) {
+            return null;
+        }
+        Class binding = descriptor.getType().getBinding();
+        Object value = literal.evaluate(null, binding);
+        if (value == null) {
+            return null;
+        }
+        String column = quoteColumn(descriptor);
+        String sql;
+        if (binding == String.class && !filter.isMatchingCase()) {
+            sql = "ucase(" + column + ") " + operator + " ?";
+            value = value.toString().toUpperCase();
+        } else {
+            if (binding == String.class) {
+                if (!"=".equals(operator)) {
+                    // case sensitive ordering and inequality can not be expressed
+                    return null;
+                }
+                // Access compares strings case insensitive, the post filter
+                // checks the case
+                exact[0] = false;
+            }
+            sql = column + " " + operator + " ?";
+        }
+        params.add(value);
+        if ("<>".equals(operator)) {
+            // GeoTools finds null not equal to the value, SQL does not
+            return "(" + sql + " or " + column + " is null)";
+        }
+        unknownIfNull.add(column);
+        return sql;
+    }
+
+    private String encodeLike(PropertyIsLike filter, List<Object> params, boolean[] exact) {
+        if (!(filter.getExpression() instanceof PropertyName)) {
+            return null;
+        }
+        AttributeDescriptor descriptor = getDescriptor(((PropertyName) filter.getExpression()).getPropertyName());
+        if (descriptor == null || descriptor.getType().getBinding() != String.class) {
+            return null;
+        }
+        String pattern = toSQLPattern(filter.getLiteral(), filter.getWildCard(), filter.getSingleChar(), filter.getEscape());
+        if (pattern == null) {
+            return null;
+        }
+        String column = quoteColumn(descriptor);
+        unknownIfNull.add(column);
+        if (!filter.isMatchingCase()) {
+            params.add(pattern.toUpperCase());
+            return "ucase(" + column + ") like ?";
+        }
+        exact[0] = false;
+        params.add(pattern);
+        return column + " like ?";
+    }
+
+    /**
+     * Convert an OGC like pattern to SQL with % and _ wildcards.
+     *
+     * @return null if the pattern contains characters that would need
+     * escaping in SQL
+     */
+    static String toSQLPattern(String literal, String wildCard, String singleChar, String escape) {
+        if (literal == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < literal.length()) {
+            if (escape != null && !escape.isEmpty() && literal.startsWith(escape, i)) {
+                i += escape.length();
+                if (i >= literal.length()) {
+                    return null;
+                }
+                char c = literal.charAt(i++);
+                if (c == '%' || c == '_' || c == '[') {
+                    return null;
+                }
+                sb.append(c);
+            } else if (wildCard != null && !wildCard.isEmpty() && literal.startsWith(wildCard, i)) {
+                sb.append('%');
+                i += wildCard.length();
+            } else if (singleChar != null && !singleChar.isEmpty() && literal.startsWith(singleChar, i)) {
+                sb.append('_');
+                i += singleChar.length();
+            } else {
+                char c = literal.charAt(i++);
+                if (c == '%' || c == '_' || c == '[') {
+                    return null;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private String encodeBetween(PropertyIsBetween filter, List<Object> params) {
+        if (!(filter.getExpression() instanceof PropertyName)
+                || !(filter.getLowerBoundary() instanceof Literal)
+                || !(filter.getUpperBoundary() instanceof Literal)) {
+            return null;
+        }
+        AttributeDescriptor descriptor = getDescriptor(((PropertyName) filter.getExpression()).getPropertyName());
+        if (descriptor == null || !isSupported(descriptor) || descriptor.getType().getBinding() == String.class) {
+            return null;
+        }
+        Class binding = descriptor.getType().getBinding();
+        Object lower = filter.getLowerBoundary().evaluate(null, binding);
+        Object upper = filter.getUpperBoundary().evaluate(null, binding);
+        if (lower == null || upper == null) {
+            return null;
+        }
+        params.add(lower);
+        params.add(upper);
+        unknownIfNull.add(quoteColumn(descriptor));
+        return quoteColumn(descriptor) + " between ? and ?";
+    }
+
+    private String encodeBBOX(BBOX filter, List<Object> params, boolean[] exact) {
+        if (!isGeometryProperty(filter.getExpression1())) {
+            return null;
+        }
+        BoundingBox bounds = filter.getBounds();
+        if (bounds == null) {
+            return null;
+        }
+        Envelope envelope = toNativeEnvelope(ReferencedEnvelope.reference(bounds), exact);
+        lastEnvelope = envelope == null ? null : new Envelope(envelope);
+        return envelope == null ? null : encodeRange(envelope, params);
+    }
+
+    private String encodeEnvelope(BinarySpatialOperator filter, List<Object> params, boolean[] exact) {
+        Expression property = filter.getExpression1();
+        Expression literal = filter.getExpression2();
+        if (property instanceof Literal) {
+            Expression tmp = property;
+            property = literal;
+            literal = tmp;
+        }
+        if (!isGeometryProperty(property) || !(literal instanceof Literal)) {
+            return null;
+        }
+        Geometry geometry = literal.evaluate(null, Geometry.class);
+        if (geometry == null) {
+            return null;
+        }
+        CoordinateReferenceSystem crs = geometry.getUserData() instanceof CoordinateReferenceSystem
+                ? (CoordinateReferenceSystem) geometry.getUserData() : null;
+        Envelope envelope = toNativeEnvelope(new ReferencedEnvelope(geometry.getEnvelopeInternal(), crs), exact);
+        return envelope == null ? null : encodeRange(envelope, params);
+    }
+
+    /**
+     * Transform an envelope to the crs of the feature type if needed.
+     *
+     * @param exact set to false when transformed, the transformed envelope
+     * covers more than the original
+     * @return null if the envelope can not be transformed
+     */
+    private Envelope toNativeEnvelope(ReferencedEnvelope envelope, boolean[] exact) {
+        CoordinateReferenceSystem target = featureType.getCoordinateReferenceSystem();
+        CoordinateReferenceSystem source = envelope.getCoordinateReferenceSystem();
+        if (source == null || target == null || CRS.equalsIgnoreMetadata(source, target)) {
+            return envelope;
+        }
+        try {
+            ReferencedEnvelope transformed = envelope.transform(target, true);
+            exact[0] = false;
+            return transformed;
+        } catch (Exception ex) {
+            log.debug("Envelope can not be transformed to native crs", ex);
+            return null;
+        }
+    }
+
+    private String encodeRange(Envelope envelope, List<Object> params) {
+        String x = mapping.getXColumn();
+        String y = mapping.getYColumn();
+        if (x == null || y == null) {
+            return null;
+        }
+        if (envelope.isNull()) {
+            return "1=0";
+        }
+        params.add(envelope.getMinX());
+        params.add(envelope.getMaxX());
+        params.add(envelope.getMinY());
+        params.add(envelope.getMaxY());
+        unknownIfNull.add(SpatialUtil.quote(x, quote));
+        unknownIfNull.add(SpatialUtil.quote(y, quote));
+        return SpatialUtil.quote(x, quote) + " between ? and ? and "
+                + SpatialUtil.quote(y, quote) + " between ? and ?";
+    }
+
+    private boolean isGeometryProperty(Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return false;
+        }
+        String name = ((PropertyName) expression).getPropertyName();
+        return name == null || name.isEmpty() || RowMapping.GEOMETRY_NAME.equalsIgnoreCase(stripPrefix(name));
+    }
+
+    private static PropertyName propertyOf(Expression e1, Expression e2) {
+        if (e1 instanceof PropertyName && e2 instanceof Literal) {
+            return (PropertyName) e1;
+        } else if (e2 instanceof PropertyName && e1 instanceof Literal) {
+            return (PropertyName) e2;
+        }
+        return null;
+    }
+
+    private static Literal literalOf(Expression e1, Expression e2) {
+        if (e1 instanceof PropertyName && e2 instanceof Literal) {
+            return (Literal) e2;
+        } else if (e2 instanceof PropertyName && e1 instanceof Literal) {
+            return (Literal) e1;
+        }
+        return null;
+    }
+
+    private String getColumn(Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return null;
+        }
+        AttributeDescriptor descriptor = getDescriptor(((PropertyName) expression).getPropertyName());
+        return descriptor == null ? null : quoteColumn(descriptor);
+    }
+
+    /**
+     * @return the descriptor of a plain column, null for the geometry or
+     * unknown properties
+     */
+    private AttributeDescriptor getDescriptor(String propertyName) {
+        if (propertyName == null) {
+            return null;
+        }
+        AttributeDescriptor descriptor = featureType.getDescriptor(stripPrefix(propertyName));
+        if (descriptor == null || RowMapping.GEOMETRY_NAME.equalsIgnoreCase(descriptor.getLocalName())) {
+            return null;
+        }
+        return descriptor;
+    }
+
+    private static String stripPrefix(String propertyName) {
+        int colon = propertyName.indexOf(':');
+        return colon >= 0 ? propertyName.substring(colon + 1) : propertyName;
+    }
+
+    private static boolean isSupported(AttributeDescriptor descriptor) {
+        Class binding = descriptor.getType().getBinding();
+        return binding == Long.class || binding == Double.class
+                || binding == Timestamp.class || binding == String.class;
+    }
+
+    private String quoteColumn(AttributeDescriptor descriptor) {
+        return SpatialUtil.quote(descriptor.getLocalName(), quote);
+    }
+}
@@ -0,0 +1,50 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.awt.RenderingHints;
+
+/**
+ * Query hints supported by {@link MsAccessFeatureSource}.
+ */
+public class MsAccessHints {
+
+    /**
+     * When Boolean.TRUE the reader returns the same feature instance for
+     * every row, with the values of the current row. Only for consumers that
+     * do not keep a reference to a feature after asking for the next one.
+     * Ignored when the features are reprojected or sorted in memory, as
+     * those read ahead.
+     */
+    public static final Key FEATURE_REUSE = new Key(1, Boolean.class);
+
+    /**
+     * Cell size of a grid in the units of the native CRS of the type, also
+     * when the query reprojects the features. When set the reader returns a
+     * feature per grid cell with points instead of the points, with the
+     * average location of the points in the cell and their number in the
+     * "count" attribute. Sorting and paging of the query apply to the cells,
+     * a sort can only be on the "count" attribute or the geometry. Meant for
+     * drawing large point layers at small scales.
+     */
+    public static final Key GRID_CELL_SIZE = new Key(2, Number.class);
+
+    private MsAccessHints() {
+    }
+
+    /**
+     * Hint key accepting values of one class.
+     */
+    public static class Key extends RenderingHints.Key {
+
+        private final Class<?> valueClass;
+
+        protected Key(int privateKey, Class<?> valueClass) {
+            super(privateKey);
+            this.valueClass = valueClass;
+        }
+
+        @Override
+        public boolean isCompatibleValue(Object value) {
+            return valueClass.isInstance(value);
+        }
+    }
+}
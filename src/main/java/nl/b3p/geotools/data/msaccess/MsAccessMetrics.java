@@ -0,0 +1,186 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Collects the statistics of a datastore. The datastore only creates this
+ * when enabled, the code paths check for null so there is no cost otherwise.
+ */
+public class MsAccessMetrics implements MsAccessMetricsMXBean {
+
+    private static final Log log = LogFactory.getLog(MsAccessMetrics.class);
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final MsAccessDataStore dataStore;
+    private final String url;
+    private final ConnectionProvider connectionProvider;
+    private final Map<String, TypeMetrics> types = new ConcurrentHashMap<>();
+    private final LongAdder connectionsBorrowed = new LongAdder();
+    private final LongAdder connectionNanos = new LongAdder();
+    private final LongAdder metadataLookups = new LongAdder();
+    private final LongAdder metadataNanos = new LongAdder();
+    private final LongAdder schemaCacheHits = new LongAdder();
+    private final LongAdder schemaCacheMisses = new LongAdder();
+    private final LongAdder snapshotCacheHits = new LongAdder();
+    private final LongAdder snapshotCacheMisses = new LongAdder();
+    private ObjectName objectName;
+
+    public MsAccessMetrics(MsAccessDataStore dataStore, ConnectionProvider connectionProvider, String url) {
+        this.dataStore = dataStore;
+        this.url = url;
+        this.connectionProvider = connectionProvider;
+    }
+
+    /**
+     * Register with the platform MBean server as
+     * nl.b3p.geotools.data.msaccess:type=MsAccessDataStore,name=url#n
+     */
+    public void register() {
+        try {
+            ObjectName name = new ObjectName("nl.b3p.geotools.data.msaccess:type=MsAccessDataStore,name="
+                    + ObjectName.quote(getUrl() + "#" + instances.incrementAndGet()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (Exception ex) {
+            log.warn("Could not register datastore statistics with JMX: " + ex.getLocalizedMessage());
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(objectName);
+        } catch (Exception ex) {
+            log.debug("Could not unregister datastore statistics", ex);
+        }
+        objectName = null;
+    }
+
+    public TypeMetrics forType(String typeName) {
+        TypeMetrics metrics = types.get(typeName);
+        if (metrics == null) {
+            metrics = types.computeIfAbsent(typeName, TypeMetrics::new);
+        }
+        return metrics;
+    }
+
+    void connectionBorrowed(long nanos) {
+        connectionsBorrowed.increment();
+        connectionNanos.add(nanos);
+    }
+
+    void metadataLookup(long nanos) {
+        metadataLookups.increment();
+        metadataNanos.add(nanos);
+    }
+
+    void schemaCache(boolean hit) {
+        (hit ? schemaCacheHits : schemaCacheMisses).increment();
+    }
+
+    void snapshotCache(boolean hit) {
+        (hit ? snapshotCacheHits : snapshotCacheMisses).increment();
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public int getOpenReaders() {
+        return dataStore.getOpenReaderCount();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return connectionProvider instanceof PooledConnectionProvider
+                ? ((PooledConnectionProvider) connectionProvider).getActiveCount() : -1;
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return connectionProvider instanceof PooledConnectionProvider
+                ? ((PooledConnectionProvider) connectionProvider).getIdleCount() : -1;
+    }
+
+    @Override
+    public long getConnectionsBorrowed() {
+        return connectionsBorrowed.sum();
+    }
+
+    @Override
+    public double getMeanConnectionMillis() {
+        long count = connectionsBorrowed.sum();
+        return count == 0 ? 0 : connectionNanos.sum() / 1e6 / count;
+    }
+
+    @Override
+    public long getMetadataLookups() {
+        return metadataLookups.sum();
+    }
+
+    @Override
+    public double getMeanMetadataMillis() {
+        long count = metadataLookups.sum();
+        return count == 0 ? 0 : metadataNanos.sum() / 1e6 / count;
+    }
+
+    @Override
+    public long getSchemaCacheHits() {
+        return schemaCacheHits.sum();
+    }
+
+    @Override
+    public long getSchemaCacheMisses() {
+        return schemaCacheMisses.sum();
+    }
+
+    @Override
+    public long getSnapshotCacheHits() {
+        return snapshotCacheHits.sum();
+    }
+
+    @Override
+    public long getSnapshotCacheMisses() {
+        return snapshotCacheMisses.sum();
+    }
+
+    @Override
+    public long[] getLatencyBucketMillis() {
+        return TypeMetrics.LATENCY_BUCKET_MILLIS.clone();
+    }
+
+    @Override
+    public Map<String, TypeMetrics> getTypes() {
+        return new TreeMap<>(types);
+    }
+
+    @Override
+    public void reset() {
+        for (TypeMetrics metrics : types.values()) {
+            metrics.reset();
+        }
+        connectionsBorrowed.reset();
+        connectionNanos.reset();
+        metadataLookups.reset();
+        metadataNanos.reset();
+        schemaCacheHits.reset();
+        schemaCacheMisses.reset();
+        snapshotCacheHits.reset();
+        snapshotCacheMisses.reset();
+    }
+}
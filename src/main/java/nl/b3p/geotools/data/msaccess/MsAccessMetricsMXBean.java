@@ -0,0 +1,56 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.util.Map;
+
+/**
+ * Runtime statistics of a {@link MsAccessDataStore}, registered with JMX when
+ * the datastore is created with the jmx parameter.
+ */
+public interface MsAccessMetricsMXBean {
+
+    String getUrl();
+
+    int getOpenReaders();
+
+    /**
+     * @return connections borrowed from the pool, -1 if not pooled
+     */
+    int getActiveConnections();
+
+    /**
+     * @return idle connections in the pool, -1 if not pooled
+     */
+    int getIdleConnections();
+
+    long getConnectionsBorrowed();
+
+    double getMeanConnectionMillis();
+
+    long getMetadataLookups();
+
+    double getMeanMetadataMillis();
+
+    long getSchemaCacheHits();
+
+    long getSchemaCacheMisses();
+
+    long getSnapshotCacheHits();
+
+    long getSnapshotCacheMisses();
+
+    /**
+     * @return upper bounds in ms of the buckets of the query latency
+     * histograms, the last bucket has no upper bound
+     */
+    long[] getLatencyBucketMillis();
+
+    /**
+     * @return statistics per type name
+     */
+    Map<String, TypeMetrics> getTypes();
+
+    /**
+     * Set all counters to zero.
+     */
+    void reset();
+}
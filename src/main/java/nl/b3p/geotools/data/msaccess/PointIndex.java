@@ -0,0 +1,21 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.util.List;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Spatial index over the x/y columns of a table, mapping points to the value
+ * of the key column of their row.
+ */
+public interface PointIndex {
+
+    /**
+     * @return keys of the rows with a point inside envelope
+     */
+    List<Object> query(Envelope envelope);
+
+    /**
+     * @return number of points in the index
+     */
+    int size();
+}
@@ -0,0 +1,265 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Bounded pool of connections on top of another {@link ConnectionProvider}.
+ *
+ * At most maxSize connections are handed out at the same time, a borrower
+ * waits up to the borrow timeout for one to become available. Connections
+ * are validated when borrowed and closed after being idle for longer than
+ * the idle timeout. Calling close() on a borrowed connection returns it to
+ * the pool.
+ */
+public class PooledConnectionProvider implements ConnectionProvider {
+
+    private static final Log log = LogFactory.getLog(PooledConnectionProvider.class);
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "msaccess-pool-evictor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ConnectionProvider delegate;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+
+    private final Semaphore permits;
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();
+    private final ScheduledFuture<?> evictionTask;
+    private volatile boolean disposed = false;
+
+    /**
+     * @param delegate provider for new physical connections
+     * @param maxSize maximum number of connections in use at the same time
+     * @param idleTimeoutMillis idle connections older than this are closed,
+     * 0 or less to keep them open
+     * @param borrowTimeoutMillis maximum time to wait for a free connection
+     */
+    public PooledConnectionProvider(ConnectionProvider delegate, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+        if (idleTimeoutMillis > 0) {
+            long period = Math.max(1000, idleTimeoutMillis / 2);
+            evictionTask = evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictionTask = null;
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public Connection getConnection() throws IOException {
+        if (disposed) {
+            throw new IOException("Connection pool is disposed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timeout waiting for a free connection after " + borrowTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a free connection");
+        }
+        try {
+            Connection conn = takeIdle();
+            if (conn == null) {
+                conn = delegate.getConnection();
+            }
+            return wrap(conn);
+        } catch (IOException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    private Connection takeIdle() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            IdleConnection candidate;
+            synchronized (this) {
+                candidate = idle.pollFirst();
+            }
+            if (candidate == null) {
+                return null;
+            }
+            if (isExpired(candidate, now) || !isValid(candidate.conn)) {
+                SpatialUtil.closeQuietly(candidate.conn);
+                continue;
+            }
+            return candidate.conn;
+        }
+    }
+
+    private boolean isExpired(IdleConnection candidate, long now) {
+        return idleTimeoutMillis > 0 && now - candidate.since > idleTimeoutMillis;
+    }
+
+    private static boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException | AbstractMethodError | UnsupportedOperationException ex) {
+            // older drivers such as the JDBC-ODBC bridge do not implement isValid
+            try {
+                return !conn.isClosed();
+            } catch (SQLException ex2) {
+                return false;
+            }
+        }
+    }
+
+    private void release(Connection conn) {
+        try {
+            boolean reuse = !disposed && !conn.isClosed();
+            if (reuse) {
+                synchronized (this) {
+                    idle.addFirst(new IdleConnection(conn));
+                }
+            } else {
+                SpatialUtil.closeQuietly(conn);
+            }
+        } catch (SQLException ex) {
+            SpatialUtil.closeQuietly(conn);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<Connection> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<IdleConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                IdleConnection candidate = it.next();
+                if (isExpired(candidate, now)) {
+                    it.remove();
+                    expired.add(candidate.conn);
+                }
+            }
+        }
+        for (Connection conn : expired) {
+            SpatialUtil.closeQuietly(conn);
+        }
+        if (!expired.isEmpty() && log.isDebugEnabled()) {
+            log.debug("Closed " + expired.size() + " idle connection(s)");
+        }
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+        }
+        List<IdleConnection> toClose;
+        synchronized (this) {
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (IdleConnection candidate : toClose) {
+            SpatialUtil.closeQuietly(candidate.conn);
+        }
+        delegate.dispose();
+    }
+
+    private Connection wrap(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(PooledConnectionProvider.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new PooledConnectionHandler(conn));
+    }
+
+    private static class IdleConnection {
+
+        final Connection conn;
+        final long since = System.currentTimeMillis();
+
+        IdleConnection(Connection conn) {
+            this.conn = conn;
+        }
+    }
+
+    /**
+     * Delegates to the physical connection, except for close() which returns
+     * the connection to the pool.
+     */
+    private class PooledConnectionHandler implements InvocationHandler {
+
+        private final Connection conn;
+        private boolean closed = false;
+
+        PooledConnectionHandler(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name) && method.getParameterCount() == 0) {
+                synchronized (this) {
+                    if (closed) {
+                        return null;
+                    }
+                    closed = true;
+                }
+                release(conn);
+                return null;
+            }
+            if ("isClosed".equals(name) && method.getParameterCount() == 0) {
+                return closed || conn.isClosed();
+            }
+            if ("equals".equals(name) && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name) && method.getParameterCount() == 0) {
+                return System.identityHashCode(proxy);
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed");
+            }
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
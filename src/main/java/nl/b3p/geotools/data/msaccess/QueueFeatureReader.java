@@ -0,0 +1,166 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geotools.data.FeatureReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Reads one or more source readers on worker threads and returns their
+ * features through a bounded queue. The sources are opened on the workers,
+ * so executing the queries is done in parallel as well. Features of
+ * different sources are returned in no particular order.
+ *
+ * The workers block when the queue is full; closing this reader stops them
+ * and closes the sources.
+ */
+public class QueueFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    private static final Log log = LogFactory.getLog(QueueFeatureReader.class);
+
+    private static final Object END = new Object();
+
+    private final SimpleFeatureType featureType;
+    private final BlockingQueue<Object> queue;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int batchSize;
+    private volatile boolean closed = false;
+    private int running;
+    private Iterator<SimpleFeature> batch;
+
+    /**
+     * @param featureType type of the features of all sources
+     * @param sources open the source readers, called on the worker threads
+     * @param executor executor to run the workers on, needs a thread per
+     * source to read them at the same time
+     * @param ownsExecutor shut the executor down when this reader is closed
+     * @param capacity maximum number of batches waiting in the queue
+     * @param batchSize number of features passed through the queue at once
+     */
+    public QueueFeatureReader(SimpleFeatureType featureType,
+            List<Callable<FeatureReader<SimpleFeatureType, SimpleFeature>>> sources,
+            ExecutorService executor, boolean ownsExecutor, int capacity, int batchSize) {
+        this.featureType = featureType;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.batchSize = batchSize;
+        this.running = sources.size();
+        for (final Callable<FeatureReader<SimpleFeatureType, SimpleFeature>> source : sources) {
+            executor.execute(() -> pump(source));
+        }
+    }
+
+    private void pump(Callable<FeatureReader<SimpleFeatureType, SimpleFeature>> source) {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = null;
+        try {
+            reader = source.call();
+            List<SimpleFeature> features = new ArrayList<>(batchSize);
+            while (!closed && reader.hasNext()) {
+                features.add(reader.next());
+                if (features.size() == batchSize) {
+                    put(features);
+                    features = new ArrayList<>(batchSize);
+                }
+            }
+            if (!features.isEmpty()) {
+                put(features);
+            }
+        } catch (Throwable t) {
+            put(t);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                    log.debug("Mogelijk probleem met sluiten van reader", ex);
+                }
+            }
+            put(END);
+        }
+    }
+
+    /**
+     * Wait for room in the queue, giving up when this reader is closed.
+     */
+    private void put(Object o) {
+        try {
+            while (!closed) {
+                if (queue.offer(o, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() throws IOException {
+        while (batch == null || !batch.hasNext()) {
+            if (closed || running == 0) {
+                return false;
+            }
+            Object o;
+            try {
+                o = queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for features");
+            }
+            if (o == END) {
+                running--;
+            } else if (o instanceof Throwable) {
+                Throwable t = (Throwable) o;
+                close();
+                throw t instanceof IOException ? (IOException) t : new IOException(t.getLocalizedMessage(), t);
+            } else {
+                batch = ((List<SimpleFeature>) o).iterator();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features");
+        }
+        return batch.next();
+    }
+
+    /**
+     * Stop the workers. They are not interrupted as that may close the
+     * channel of the database file, they stop at the next feature instead.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        batch = null;
+        queue.clear();
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import org.geotools.data.FeatureReader;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.JTS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Reprojects the features of another reader. Features are read ahead in
+ * batches so the points of a batch are transformed with one call on a
+ * coordinate array, instead of a transform per geometry.
+ */
+public class ReprojectingFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    public static final int BATCH_SIZE = 256;
+
+    private final FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+    private final SimpleFeatureType featureType;
+    private final MathTransform transform;
+    private final GeometryFactory geometryFactory;
+    private final int geometryIndex;
+    private final SimpleFeature[] batch = new SimpleFeature[BATCH_SIZE];
+    private final int[] pointIndex = new int[BATCH_SIZE];
+    private final double[] coordinates = new double[BATCH_SIZE * 2];
+    private int size = 0;
+    private int position = 0;
+
+    /**
+     * @param source CRS of the features of delegate
+     * @param target CRS to transform to
+     */
+    public ReprojectingFeatureReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate,
+            CoordinateReferenceSystem source, CoordinateReferenceSystem target) throws IOException {
+        this.delegate = delegate;
+        this.featureType = SimpleFeatureTypeBuilder.retype(delegate.getFeatureType(), target);
+        try {
+            this.transform = SpatialUtil.findMathTransform(source, target);
+        } catch (FactoryException ex) {
+            throw new IOException(ex.getLocalizedMessage());
+        }
+        this.geometryFactory = RowMapping.createGeometryFactory(target);
+        this.geometryIndex = featureType.getGeometryDescriptor() == null ? -1
+                : featureType.indexOf(featureType.getGeometryDescriptor().getLocalName());
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (position < size) {
+            return true;
+        }
+        fill();
+        return size > 0;
+    }
+
+    /**
+     * Read the next batch and transform the coordinates of its points.
+     */
+    private void fill() throws IOException {
+        size = 0;
+        position = 0;
+        int points = 0;
+        while (size < BATCH_SIZE && delegate.hasNext()) {
+            SimpleFeature f = delegate.next();
+            batch[size] = f;
+            pointIndex[size] = -1;
+            if (f instanceof RowFeature) {
+                if (((RowFeature) f).getPoint(coordinates, points * 2)) {
+                    pointIndex[size] = points++;
+                }
+            } else if (f.getDefaultGeometry() instanceof Point) {
+                Point point = (Point) f.getDefaultGeometry();
+                coordinates[points * 2] = point.getX();
+                coordinates[points * 2 + 1] = point.getY();
+                pointIndex[size] = points++;
+            }
+            size++;
+        }
+        if (points > 0) {
+            try {
+                transform.transform(coordinates, 0, coordinates, 0, points);
+            } catch (TransformException ex) {
+                throw new IOException(ex.getLocalizedMessage());
+            }
+        }
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features");
+        }
+        SimpleFeature f = batch[position];
+        int point = pointIndex[position];
+        batch[position++] = null;
+
+        Object[] values = new Object[featureType.getAttributeCount()];
+        for (int i = 0; i < values.length; i++) {
+            if (i != geometryIndex) {
+                values[i] = f.getAttribute(i);
+            } else if (point >= 0) {
+                values[i] = geometryFactory.createPoint(new Coordinate(coordinates[point * 2], coordinates[point * 2 + 1]));
+            } else if (f.getAttribute(i) instanceof Geometry) {
+                try {
+                    values[i] = JTS.transform((Geometry) f.getAttribute(i), transform);
+                } catch (TransformException ex) {
+                    throw new IOException(ex.getLocalizedMessage());
+                }
+            }
+        }
+        return new SimpleFeatureImpl(values, featureType, f.getIdentifier(), false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        size = 0;
+        position = 0;
+        delegate.close();
+    }
+}
@@ -0,0 +1,24 @@
+package nl.b3p.geotools.data.msaccess;
+
+/**
+ * Values of one row as read by {@link RowMapping#read(java.sql.ResultSet, RowBuffer)},
+ * numbers are kept unboxed. Which array holds an attribute depends on its
+ * type in the mapping.
+ */
+public class RowBuffer {
+
+    final long[] longs;
+    final double[] doubles;
+    final Object[] objects;
+    final boolean[] nulls;
+    double x;
+    double y;
+    boolean hasPoint;
+
+    public RowBuffer(int attributeCount) {
+        longs = new long[attributeCount];
+        doubles = new double[attributeCount];
+        objects = new Object[attributeCount];
+        nulls = new boolean[attributeCount];
+    }
+}
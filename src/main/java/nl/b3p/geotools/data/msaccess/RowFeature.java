@@ -0,0 +1,346 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.geotools.feature.IllegalAttributeException;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.geometry.BoundingBox;
+
+/**
+ * Feature backed by a {@link RowBuffer}. Attribute values are only created
+ * when they are asked for, the point geometry only when the geometry is
+ * used. The property based methods work on a full copy made on first use;
+ * from then on the attribute methods use that copy too, so a change made
+ * through a property is seen by getAttribute() and the other way round.
+ *
+ * A reader may reuse one instance for all rows, see
+ * {@link #reset(String)}.
+ */
+public class RowFeature implements SimpleFeature {
+
+    private final RowMapping mapping;
+    private final SimpleFeatureType featureType;
+    private final RowBuffer row;
+    private final Object[] values;
+    private final boolean[] decoded;
+    private FeatureId id;
+    private SimpleFeatureImpl full;
+    private Map<Object, Object> userData;
+
+    public RowFeature(RowMapping mapping) {
+        this.mapping = mapping;
+        this.featureType = mapping.getFeatureType();
+        int count = featureType.getAttributeCount();
+        this.row = new RowBuffer(count);
+        this.values = new Object[count];
+        this.decoded = new boolean[count];
+    }
+
+    /**
+     * @return the buffer to read the next row into before calling reset()
+     */
+    public RowBuffer getRow() {
+        return row;
+    }
+
+    /**
+     * Forget the values of the previous row after a new row has been read
+     * into the buffer.
+     */
+    public void reset(String fid) {
+        id = new FeatureIdImpl(fid);
+        Arrays.fill(values, null);
+        Arrays.fill(decoded, false);
+        full = null;
+        userData = null;
+    }
+
+    @Override
+    public String getID() {
+        return id.getID();
+    }
+
+    @Override
+    public FeatureId getIdentifier() {
+        return id;
+    }
+
+    @Override
+    public SimpleFeatureType getType() {
+        return featureType;
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    @Override
+    public Object getAttribute(int index) throws IndexOutOfBoundsException {
+        if (full != null) {
+            return full.getAttribute(index);
+        }
+        if (!decoded[index]) {
+            values[index] = mapping.getValue(row, index);
+            decoded[index] = true;
+        }
+        return values[index];
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        int index = featureType.indexOf(name);
+        return index < 0 ? null : getAttribute(index);
+    }
+
+    @Override
+    public Object getAttribute(Name name) {
+        int index = featureType.indexOf(name);
+        return index < 0 ? null : getAttribute(index);
+    }
+
+    @Override
+    public List<Object> getAttributes() {
+        List<Object> attributes = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            attributes.add(getAttribute(i));
+        }
+        return attributes;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return values.length;
+    }
+
+    @Override
+    public void setAttribute(int index, Object value) throws IndexOutOfBoundsException {
+        if (full != null) {
+            full.setAttribute(index, value);
+            return;
+        }
+        values[index] = value;
+        decoded[index] = true;
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        int index = featureType.indexOf(name);
+        if (index < 0) {
+            throw new IllegalAttributeException("Unknown attribute " + name);
+        }
+        setAttribute(index, value);
+    }
+
+    @Override
+    public void setAttribute(Name name, Object value) {
+        int index = featureType.indexOf(name);
+        if (index < 0) {
+            throw new IllegalAttributeException("Unknown attribute " + name);
+        }
+        setAttribute(index, value);
+    }
+
+    @Override
+    public void setAttributes(List<Object> attributes) {
+        for (int i = 0; i < values.length; i++) {
+            setAttribute(i, attributes.get(i));
+        }
+    }
+
+    @Override
+    public void setAttributes(Object[] attributes) {
+        setAttributes(Arrays.asList(attributes));
+    }
+
+    @Override
+    public Object getDefaultGeometry() {
+        int index = mapping.getGeometryIndex();
+        return index < 0 ? null : getAttribute(index);
+    }
+
+    @Override
+    public void setDefaultGeometry(Object geometry) {
+        int index = mapping.getGeometryIndex();
+        if (index >= 0) {
+            setAttribute(index, geometry);
+        }
+    }
+
+    /**
+     * Copy the coordinates of the point to xy[offset] and xy[offset + 1],
+     * without creating the geometry if it was not asked for yet.
+     *
+     * @return false if the feature has no point
+     */
+    boolean getPoint(double[] xy, int offset) {
+        int index = mapping.getGeometryIndex();
+        if (index < 0) {
+            return false;
+        }
+        if (full == null && !decoded[index]) {
+            if (!row.hasPoint) {
+                return false;
+            }
+            xy[offset] = row.x;
+            xy[offset + 1] = row.y;
+            return true;
+        }
+        Object geometry = getAttribute(index);
+        if (geometry instanceof Point) {
+            Point point = (Point) geometry;
+            xy[offset] = point.getX();
+            xy[offset + 1] = point.getY();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(featureType.getCoordinateReferenceSystem());
+        int index = mapping.getGeometryIndex();
+        if (index < 0) {
+            return bounds;
+        }
+        if (full == null && !decoded[index]) {
+            if (row.hasPoint) {
+                bounds.expandToInclude(row.x, row.y);
+            }
+            return bounds;
+        }
+        Object geometry = getAttribute(index);
+        if (geometry instanceof Geometry) {
+            bounds.init(((Geometry) geometry).getEnvelopeInternal());
+        }
+        return bounds;
+    }
+
+    @Override
+    public Map<Object, Object> getUserData() {
+        if (userData == null) {
+            userData = new HashMap<>();
+        }
+        return userData;
+    }
+
+    /**
+     * @return a SimpleFeatureImpl with the same values, for the property
+     * based methods, holding the values of this feature from now on
+     */
+    private SimpleFeatureImpl full() {
+        if (full == null) {
+            full = new SimpleFeatureImpl(getAttributes().toArray(), featureType, id, false);
+        }
+        return full;
+    }
+
+    @Override
+    public GeometryAttribute getDefaultGeometryProperty() {
+        return full().getDefaultGeometryProperty();
+    }
+
+    @Override
+    public void setDefaultGeometryProperty(GeometryAttribute geometryAttribute) {
+        full().setDefaultGeometryProperty(geometryAttribute);
+    }
+
+    @Override
+    public Collection<Property> getProperties() {
+        return full().getProperties();
+    }
+
+    @Override
+    public Collection<Property> getProperties(Name name) {
+        return full().getProperties(name);
+    }
+
+    @Override
+    public Collection<Property> getProperties(String name) {
+        return full().getProperties(name);
+    }
+
+    @Override
+    public Property getProperty(Name name) {
+        return full().getProperty(name);
+    }
+
+    @Override
+    public Property getProperty(String name) {
+        return full().getProperty(name);
+    }
+
+    @Override
+    public Collection<? extends Property> getValue() {
+        return full().getValue();
+    }
+
+    @Override
+    public void setValue(Collection<Property> value) {
+        full().setValue(value);
+    }
+
+    @Override
+    public void setValue(Object value) {
+        full().setValue(value);
+    }
+
+    @Override
+    public AttributeDescriptor getDescriptor() {
+        return full().getDescriptor();
+    }
+
+    @Override
+    public Name getName() {
+        return featureType.getName();
+    }
+
+    @Override
+    public boolean isNillable() {
+        return true;
+    }
+
+    @Override
+    public void validate() {
+        full().validate();
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode() * featureType.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof SimpleFeature)) {
+            return false;
+        }
+        SimpleFeature other = (SimpleFeature) obj;
+        return id.equals(other.getIdentifier())
+                && featureType.equals(other.getFeatureType())
+                && getAttributes().equals(other.getAttributes());
+    }
+
+    @Override
+    public String toString() {
+        return "RowFeature:" + featureType.getTypeName() + "=" + getAttributes();
+    }
+}
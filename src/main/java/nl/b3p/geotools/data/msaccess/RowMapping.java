@@ -0,0 +1,372 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geotools.referencing.NamedIdentifier;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Plan for mapping result set rows to feature attribute values, compiled once
+ * per feature type.
+ *
+ * Column ordinals, the x/y columns, the position of the geometry attribute
+ * and the typed getter per attribute are resolved up front so reading a row
+ * does not need any name lookups.
+ */
+public class RowMapping {
+
+    private static final Log log = LogFactory.getLog(RowMapping.class);
+
+    public static final String GEOMETRY_NAME = "the_geom";
+
+    static final byte TYPE_GEOMETRY = 0;
+    static final byte TYPE_LONG = 1;
+    static final byte TYPE_DOUBLE = 2;
+    static final byte TYPE_TIMESTAMP = 3;
+    static final byte TYPE_STRING = 4;
+    static final byte TYPE_OBJECT = 5;
+
+    private final SimpleFeatureType featureType;
+    private final String[] columnNames;
+    private final byte[] types;
+    private final int[] columns;
+    private final int geometryIndex;
+    private final String xColumn;
+    private final String yColumn;
+    private final int xAttribute;
+    private final int yAttribute;
+    private final int xExtraColumn;
+    private final int yExtraColumn;
+    private final GeometryFactory geometryFactory;
+
+    private RowMapping(SimpleFeatureType featureType, String[] columnNames, byte[] types, int[] columns,
+            int geometryIndex, String xColumn, String yColumn, int xAttribute, int yAttribute,
+            int xExtraColumn, int yExtraColumn, GeometryFactory geometryFactory) {
+        this.featureType = featureType;
+        this.columnNames = columnNames;
+        this.types = types;
+        this.columns = columns;
+        this.geometryIndex = geometryIndex;
+        this.xColumn = xColumn;
+        this.yColumn = yColumn;
+        this.xAttribute = xAttribute;
+        this.yAttribute = yAttribute;
+        this.xExtraColumn = xExtraColumn;
+        this.yExtraColumn = yExtraColumn;
+        this.geometryFactory = geometryFactory;
+    }
+
+    /**
+     * Compile the mapping for a feature type.
+     *
+     * @param ft feature type as created by SpatialUtil
+     * @param xLabels names of columns holding x coordinates, the first one
+     * present in ft is used
+     * @param yLabels names of columns holding y coordinates
+     */
+    public static RowMapping compile(SimpleFeatureType ft, String[] xLabels, String[] yLabels) {
+        return compile(ft, ft, xLabels, yLabels);
+    }
+
+    /**
+     * Compile the mapping for a subset of the attributes of a table. When ft
+     * has a geometry but not the x/y columns, those are selected as extra
+     * columns to build the geometry from.
+     *
+     * @param ft feature type to create, a retyped schema
+     * @param schema feature type with all columns of the table
+     * @param xLabels names of columns holding x coordinates
+     * @param yLabels names of columns holding y coordinates
+     */
+    public static RowMapping compile(SimpleFeatureType ft, SimpleFeatureType schema, String[] xLabels, String[] yLabels) {
+        String xColumn = findCoordinateColumn(schema, xLabels);
+        String yColumn = findCoordinateColumn(schema, yLabels);
+
+        List<AttributeDescriptor> descriptors = ft.getAttributeDescriptors();
+        int count = descriptors.size();
+        byte[] types = new byte[count];
+        int[] columns = new int[count];
+        List<String> columnNames = new ArrayList<>(count + 2);
+        int geometryIndex = -1;
+        int xAttribute = -1;
+        int yAttribute = -1;
+
+        for (int i = 0; i < count; i++) {
+            AttributeDescriptor descriptor = descriptors.get(i);
+            String name = descriptor.getLocalName();
+            if (GEOMETRY_NAME.equalsIgnoreCase(name)) {
+                geometryIndex = i;
+                types[i] = TYPE_GEOMETRY;
+                continue;
+            }
+            columnNames.add(name);
+            columns[i] = columnNames.size();
+            types[i] = typeOf(descriptor.getType().getBinding());
+            if (name.equals(xColumn)) {
+                xAttribute = i;
+            }
+            if (name.equals(yColumn)) {
+                yAttribute = i;
+            }
+        }
+
+        int xExtraColumn = 0;
+        int yExtraColumn = 0;
+        if (geometryIndex >= 0 && xColumn != null && yColumn != null) {
+            if (xAttribute < 0) {
+                columnNames.add(xColumn);
+                xExtraColumn = columnNames.size();
+            }
+            if (yAttribute < 0) {
+                columnNames.add(yColumn);
+                yExtraColumn = columnNames.size();
+            }
+        }
+        return new RowMapping(ft, columnNames.toArray(new String[columnNames.size()]), types, columns,
+                geometryIndex, xColumn, yColumn, xAttribute, yAttribute, xExtraColumn, yExtraColumn,
+                createGeometryFactory(ft));
+    }
+
+    /**
+     * @return name of the first numeric column of ft matching one of the
+     * labels, null if none
+     */
+    private static String findCoordinateColumn(SimpleFeatureType ft, String[] labels) {
+        for (AttributeDescriptor descriptor : ft.getAttributeDescriptors()) {
+            byte type = typeOf(descriptor.getType().getBinding());
+            if ((type == TYPE_DOUBLE || type == TYPE_LONG) && matches(descriptor.getLocalName(), labels)) {
+                return descriptor.getLocalName();
+            }
+        }
+        return null;
+    }
+
+    private static byte typeOf(Class binding) {
+        if (binding == Long.class) {
+            return TYPE_LONG;
+        } else if (binding == Double.class) {
+            return TYPE_DOUBLE;
+        } else if (binding == Timestamp.class) {
+            return TYPE_TIMESTAMP;
+        } else if (binding == String.class) {
+            return TYPE_STRING;
+        }
+        return TYPE_OBJECT;
+    }
+
+    private static boolean matches(String name, String[] labels) {
+        if (labels == null) {
+            return false;
+        }
+        for (String label : labels) {
+            if (name.equals(label.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static GeometryFactory createGeometryFactory(SimpleFeatureType ft) {
+        return createGeometryFactory(ft.getGeometryDescriptor() == null ? null
+                : ft.getGeometryDescriptor().getCoordinateReferenceSystem());
+    }
+
+    /**
+     * @return a geometry factory with the SRID of the first identifier of
+     * crs, -1 if crs is null or has no numeric identifier
+     */
+    static GeometryFactory createGeometryFactory(CoordinateReferenceSystem crs) {
+        int SRID = -1;
+        if (crs != null) {
+            try {
+                Set ident = crs.getIdentifiers();
+                if (ident != null && !ident.isEmpty()) {
+                    String code = ((NamedIdentifier) ident.toArray()[0]).getCode();
+                    SRID = Integer.parseInt(code);
+                }
+            } catch (Exception e) {
+                log.error("SRID could not be determined from crs!");
+            }
+        }
+        return new GeometryFactory(MsAccessFeatureReader.precisionModel, SRID);
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public GeometryFactory getGeometryFactory() {
+        return geometryFactory;
+    }
+
+    /**
+     * @return names of the columns to select, in result set order
+     */
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * @return name of the column holding x coordinates, null if none
+     */
+    public String getXColumn() {
+        return xColumn;
+    }
+
+    /**
+     * @return name of the column holding y coordinates, null if none
+     */
+    public String getYColumn() {
+        return yColumn;
+    }
+
+    public int getGeometryIndex() {
+        return geometryIndex;
+    }
+
+    /**
+     * @return the TYPE_ code of an attribute
+     */
+    byte getType(int attribute) {
+        return types[attribute];
+    }
+
+    /**
+     * Build the select statement for this mapping.
+     *
+     * @param table table name
+     * @param quote identifier quote string from the database metadata
+     */
+    public String getSelect(String table, String quote) {
+        return getSelect(table, quote, -1);
+    }
+
+    /**
+     * @param top maximum number of rows, negative for all rows
+     */
+    public String getSelect(String table, String quote, int top) {
+        StringBuilder q = new StringBuilder("select ");
+        if (top >= 0) {
+            q.append("top ").append(top).append(" ");
+        }
+        if (columnNames.length == 0) {
+            q.append("*");
+        }
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0) {
+                q.append(", ");
+            }
+            q.append(SpatialUtil.quote(columnNames[i], quote));
+        }
+        q.append(" from ").append(SpatialUtil.quote(table, quote));
+        return q.toString();
+    }
+
+    /**
+     * Read the current row of rs into a buffer without creating objects for
+     * numbers or the geometry, see {@link #getValue(RowBuffer, int)}.
+     */
+    public void read(ResultSet rs, RowBuffer row) throws SQLException {
+        boolean hasX = false;
+        boolean hasY = false;
+        for (int i = 0; i < types.length; i++) {
+            int column = columns[i];
+            switch (types[i]) {
+                case TYPE_LONG: {
+                    long l = rs.getLong(column);
+                    row.longs[i] = l;
+                    row.nulls[i] = rs.wasNull();
+                    if (!row.nulls[i]) {
+                        if (i == xAttribute) {
+                            row.x = l;
+                            hasX = true;
+                        }
+                        if (i == yAttribute) {
+                            row.y = l;
+                            hasY = true;
+                        }
+                    }
+                    break;
+                }
+                case TYPE_DOUBLE: {
+                    double d = rs.getDouble(column);
+                    row.doubles[i] = d;
+                    row.nulls[i] = rs.wasNull();
+                    if (!row.nulls[i]) {
+                        if (i == xAttribute) {
+                            row.x = d;
+                            hasX = true;
+                        }
+                        if (i == yAttribute) {
+                            row.y = d;
+                            hasY = true;
+                        }
+                    }
+                    break;
+                }
+                case TYPE_TIMESTAMP:
+                    row.objects[i] = rs.getTimestamp(column);
+                    break;
+                case TYPE_STRING:
+                    row.objects[i] = rs.getString(column);
+                    break;
+                case TYPE_OBJECT:
+                    row.objects[i] = rs.getObject(column);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (xExtraColumn > 0) {
+            row.x = rs.getDouble(xExtraColumn);
+            hasX = !rs.wasNull();
+        }
+        if (yExtraColumn > 0) {
+            row.y = rs.getDouble(yExtraColumn);
+            hasY = !rs.wasNull();
+        }
+        row.hasPoint = hasX && hasY;
+    }
+
+    /**
+     * @return the value of an attribute in a buffer filled by
+     * {@link #read(ResultSet, RowBuffer)}, the geometry is created here
+     */
+    public Object getValue(RowBuffer row, int attribute) {
+        switch (types[attribute]) {
+            case TYPE_GEOMETRY:
+                return row.hasPoint ? geometryFactory.createPoint(new Coordinate(row.x, row.y)) : null;
+            case TYPE_LONG:
+                return row.nulls[attribute] ? null : Long.valueOf(row.longs[attribute]);
+            case TYPE_DOUBLE:
+                return row.nulls[attribute] ? null : Double.valueOf(row.doubles[attribute]);
+            default:
+                return row.objects[attribute];
+        }
+    }
+
+    /**
+     * Read the current row of rs into values, which must have room for all
+     * attributes of the feature type, through a buffer as
+     * {@link #read(ResultSet, RowBuffer)} does.
+     *
+     * @param row buffer to read the row into, reused for every row
+     */
+    public Object[] read(ResultSet rs, RowBuffer row, Object[] values) throws SQLException {
+        read(rs, row);
+        for (int i = 0; i < types.length; i++) {
+            values[i] = getValue(row, i);
+        }
+        return values;
+    }
+}
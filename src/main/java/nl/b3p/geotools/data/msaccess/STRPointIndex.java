@@ -0,0 +1,43 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.util.List;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * In-memory packed R-tree (STR) over the points of a table.
+ */
+public class STRPointIndex implements PointIndex {
+
+    private static final int NODE_CAPACITY = 16;
+
+    private final STRtree tree = new STRtree(NODE_CAPACITY);
+    private int size = 0;
+    private boolean built = false;
+
+    public void add(double x, double y, Object key) {
+        if (built) {
+            throw new IllegalStateException("Index is already built");
+        }
+        tree.insert(new Envelope(x, x, y, y), key);
+        size++;
+    }
+
+    /**
+     * Pack the tree, no points can be added afterwards.
+     */
+    public void build() {
+        tree.build();
+        built = true;
+    }
+
+    @Override
+    public List<Object> query(Envelope envelope) {
+        return tree.query(envelope);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,78 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Column names and types of the tables of a database, stored in a file next
+ * to it so the metadata does not have to be queried on every start. The file
+ * is stamped with the size and modification time of the database.
+ */
+public class SchemaFile {
+
+    private static final Log log = LogFactory.getLog(SchemaFile.class);
+
+    static final int MAGIC = 0x42335353;
+    static final int VERSION = 1;
+
+    private SchemaFile() {
+    }
+
+    /**
+     * @return the schema file for a database: its name followed by
+     * ".schema"
+     */
+    public static File forSource(File sourceFile) {
+        return new File(sourceFile.getParentFile(), sourceFile.getName() + ".schema");
+    }
+
+    /**
+     * @return the column types per table as written for stamp, null if the
+     * file does not exist or is out of date
+     */
+    public static Map<String, Map<String, Integer>> read(File file, SourceStamp stamp) {
+        if (stamp == null || !file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = StampedFile.open(file, MAGIC, VERSION, stamp)) {
+            if (in == null) {
+                return null;
+            }
+            int tableCount = in.readInt();
+            Map<String, Map<String, Integer>> columnTypes = new LinkedHashMap<>();
+            for (int t = 0; t < tableCount; t++) {
+                String tableName = in.readUTF();
+                int columnCount = in.readInt();
+                Map<String, Integer> columns = new LinkedHashMap<>();
+                for (int c = 0; c < columnCount; c++) {
+                    String name = in.readUTF();
+                    columns.put(name, in.readInt());
+                }
+                columnTypes.put(tableName, columns);
+            }
+            return columnTypes;
+        } catch (IOException ex) {
+            log.warn("Schema file " + file + " could not be read: " + ex.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    public static void write(File file, SourceStamp stamp, Map<String, Map<String, Integer>> columnTypes) throws IOException {
+        StampedFile.write(file, MAGIC, VERSION, stamp, out -> {
+            out.writeInt(columnTypes.size());
+            for (Map.Entry<String, Map<String, Integer>> table : columnTypes.entrySet()) {
+                out.writeUTF(table.getKey());
+                out.writeInt(table.getValue().size());
+                for (Map.Entry<String, Integer> column : table.getValue().entrySet()) {
+                    out.writeUTF(column.getKey());
+                    out.writeInt(column.getValue());
+                }
+            }
+        });
+    }
+}
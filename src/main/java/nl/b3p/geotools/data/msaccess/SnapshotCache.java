@@ -0,0 +1,151 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Least recently used cache of {@link TableSnapshot}s within a memory budget.
+ * Snapshots are stamped with the database file they were read from and are
+ * dropped when the file changes. The queries on types that are not cached
+ * are counted, so only types that are queried often are read.
+ */
+public class SnapshotCache {
+
+    private static final Log log = LogFactory.getLog(SnapshotCache.class);
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Types that did not fit in the budget, so they are not read again until
+     * the file changes.
+     */
+    private final Map<String, SourceStamp> rejected = new HashMap<>();
+    private final Map<String, QueryCount> queries = new HashMap<>();
+    private long totalBytes = 0;
+
+    public SnapshotCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the snapshot of a type for the current stamp, null if not
+     * cached
+     */
+    public synchronized TableSnapshot get(String typeName, SourceStamp stamp) {
+        Entry entry = entries.get(typeName);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.stamp.equals(stamp)) {
+            remove(typeName);
+            return null;
+        }
+        return entry.snapshot;
+    }
+
+    /**
+     * Count a query on a type that is not cached.
+     *
+     * @return the number of queries on the type since the file last changed,
+     * including this one
+     */
+    public synchronized int countQuery(String typeName, SourceStamp stamp) {
+        QueryCount count = queries.get(typeName);
+        if (count == null || !count.stamp.equals(stamp)) {
+            count = new QueryCount(stamp);
+            queries.put(typeName, count);
+        }
+        return ++count.count;
+    }
+
+    /**
+     * @return true if a snapshot of the type was too large for the cache at
+     * this stamp
+     */
+    public synchronized boolean isRejected(String typeName, SourceStamp stamp) {
+        return stamp.equals(rejected.get(typeName));
+    }
+
+    /**
+     * Do not read the type again until the file changes, because its
+     * snapshot does not fit in the budget.
+     */
+    public synchronized void reject(String typeName, SourceStamp stamp) {
+        remove(typeName);
+        rejected.put(typeName, stamp);
+    }
+
+    /**
+     * Add a snapshot, evicting the least recently used ones to stay within
+     * the budget.
+     *
+     * @return false if the snapshot is larger than the whole budget
+     */
+    public synchronized boolean put(String typeName, SourceStamp stamp, TableSnapshot snapshot) {
+        remove(typeName);
+        if (snapshot.getByteSize() > maxBytes) {
+            log.info("Snapshot of " + typeName + " (" + snapshot.getByteSize() + " bytes) exceeds cache size of " + maxBytes + " bytes");
+            rejected.put(typeName, stamp);
+            return false;
+        }
+        rejected.remove(typeName);
+        queries.remove(typeName);
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes + snapshot.getByteSize() > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            totalBytes -= eldest.getValue().snapshot.getByteSize();
+            it.remove();
+            log.debug("Evicted snapshot of " + eldest.getKey());
+        }
+        entries.put(typeName, new Entry(stamp, snapshot));
+        totalBytes += snapshot.getByteSize();
+        return true;
+    }
+
+    private void remove(String typeName) {
+        Entry entry = entries.remove(typeName);
+        if (entry != null) {
+            totalBytes -= entry.snapshot.getByteSize();
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        rejected.clear();
+        queries.clear();
+        totalBytes = 0;
+    }
+
+    private static class Entry {
+
+        final SourceStamp stamp;
+        final TableSnapshot snapshot;
+
+        Entry(SourceStamp stamp, TableSnapshot snapshot) {
+            this.stamp = stamp;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private static class QueryCount {
+
+        final SourceStamp stamp;
+        int count;
+
+        QueryCount(SourceStamp stamp) {
+            this.stamp = stamp;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import org.geotools.data.FeatureReader;
+import org.locationtech.jts.geom.Envelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+/**
+ * Reads the features of a {@link TableSnapshot} matching a filter. Rows
+ * outside the bbox of the filter are skipped before a feature is created.
+ */
+public class SnapshotFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    private final TableSnapshot snapshot;
+    private final Filter filter;
+    private final Envelope envelope;
+    private int row = 0;
+    private SimpleFeature next;
+
+    /**
+     * @param filter filter to evaluate on every feature
+     * @param envelope bbox in the coordinates of the table that features must
+     * be in, null for no bbox
+     */
+    public SnapshotFeatureReader(TableSnapshot snapshot, Filter filter, Envelope envelope) {
+        this.snapshot = snapshot;
+        this.filter = filter == null ? Filter.INCLUDE : filter;
+        this.envelope = envelope;
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return snapshot.getFeatureType();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        while (next == null && row < snapshot.size()) {
+            int current = row++;
+            if (envelope != null && !snapshot.pointWithin(current,
+                    envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY())) {
+                continue;
+            }
+            SimpleFeature f = snapshot.getFeature(current);
+            if (filter == Filter.INCLUDE || filter.evaluate(f)) {
+                next = f;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features");
+        }
+        SimpleFeature f = next;
+        next = null;
+        return f;
+    }
+
+    @Override
+    public void close() throws IOException {
+        row = snapshot.size();
+        next = null;
+    }
+}
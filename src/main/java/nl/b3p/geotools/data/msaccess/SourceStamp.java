@@ -0,0 +1,55 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.File;
+
+/**
+ * Size and modification time of the database file, used to detect that
+ * data derived from it such as indexes and caches is out of date.
+ */
+public final class SourceStamp {
+
+    private final long size;
+    private final long lastModified;
+
+    public SourceStamp(long size, long lastModified) {
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return the current stamp of file, null if there is no such file
+     */
+    public static SourceStamp of(File file) {
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        return new SourceStamp(file.length(), file.lastModified());
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SourceStamp)) {
+            return false;
+        }
+        SourceStamp other = (SourceStamp) obj;
+        return size == other.size && lastModified == other.lastModified;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (size ^ (size >>> 32)) * 31 + (int) (lastModified ^ (lastModified >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return size + "@" + lastModified;
+    }
+}
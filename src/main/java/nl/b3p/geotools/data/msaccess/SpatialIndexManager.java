@@ -0,0 +1,190 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+/**
+ * Lazily built point indexes per type name. An index is rebuilt when the
+ * database file has changed since it was built.
+ *
+ * With the sidecar option indexes over integer keys are written to a file
+ * next to the database and memory mapped, so a later start only has to open
+ * that file instead of reading the table.
+ */
+public class SpatialIndexManager {
+
+    private static final Log log = LogFactory.getLog(SpatialIndexManager.class);
+
+    private final MsAccessDataStore dataStore;
+    private final File sourceFile;
+    private final boolean sidecar;
+    private final Map<String, IndexEntry> indexes = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    public SpatialIndexManager(MsAccessDataStore dataStore, File sourceFile) {
+        this(dataStore, sourceFile, false);
+    }
+
+    /**
+     * @param sidecar store indexes in memory mapped files next to
+     * sourceFile
+     */
+    public SpatialIndexManager(MsAccessDataStore dataStore, File sourceFile, boolean sidecar) {
+        this.dataStore = dataStore;
+        this.sourceFile = sourceFile;
+        this.sidecar = sidecar && sourceFile != null;
+    }
+
+    /**
+     * @return the index for a type, null if the type has no key column or
+     * no x/y columns
+     */
+    public PointIndex getIndex(String typeName) throws IOException {
+        SourceStamp stamp = SourceStamp.of(sourceFile);
+        IndexEntry entry = indexes.get(typeName);
+        if (entry != null && Objects.equals(entry.stamp, stamp)) {
+            return entry.index;
+        }
+        synchronized (locks.computeIfAbsent(typeName, k -> new Object())) {
+            entry = indexes.get(typeName);
+            if (entry != null && Objects.equals(entry.stamp, stamp)) {
+                return entry.index;
+            }
+            // drop an index of an older stamp before building, so its
+            // mapped buffers can be released
+            indexes.remove(typeName);
+            long start = System.currentTimeMillis();
+            PointIndex index = build(typeName, stamp);
+            if (log.isDebugEnabled() && index != null) {
+                log.debug("Built spatial index for " + typeName + " with " + index.size()
+                        + " points in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            indexes.put(typeName, new IndexEntry(stamp, index));
+            return index;
+        }
+    }
+
+    protected PointIndex build(String typeName, SourceStamp stamp) throws IOException {
+        String keyColumn = dataStore.getKeyColumn(typeName);
+        RowMapping mapping = dataStore.getRowMapping(typeName);
+        if (keyColumn == null || mapping.getXColumn() == null || mapping.getYColumn() == null) {
+            return null;
+        }
+        File file = null;
+        if (sidecar && stamp != null && isIntegerKey(typeName, keyColumn)) {
+            file = getSidecarFile(typeName);
+            MappedPointIndex index = MappedPointIndex.open(file, stamp);
+            if (index != null) {
+                log.debug("Opened spatial index file " + file);
+                return index;
+            }
+        }
+        String quote = dataStore.getIdentifierQuote();
+        String x = SpatialUtil.quote(mapping.getXColumn(), quote);
+        String y = SpatialUtil.quote(mapping.getYColumn(), quote);
+        String q = "select " + SpatialUtil.quote(keyColumn, quote) + ", " + x + ", " + y
+                + " from " + SpatialUtil.quote(typeName, quote)
+                + " where " + x + " is not null and " + y + " is not null";
+        if (file == null) {
+            return dataStore.executeQuery(q, null, rs -> {
+                STRPointIndex index = new STRPointIndex();
+                while (rs.next()) {
+                    Object key = rs.getObject(1);
+                    index.add(rs.getDouble(2), rs.getDouble(3), key);
+                }
+                index.build();
+                return index;
+            });
+        }
+
+        final Points points = dataStore.executeQuery(q, null, rs -> {
+            Points p = new Points();
+            while (rs.next()) {
+                long key = rs.getLong(1);
+                if (!rs.wasNull()) {
+                    p.add(rs.getDouble(2), rs.getDouble(3), key);
+                }
+            }
+            return p;
+        });
+        try {
+            MappedPointIndex.write(file, stamp, points.x, points.y, points.keys, points.count);
+            MappedPointIndex index = MappedPointIndex.open(file, stamp);
+            if (index != null) {
+                return index;
+            }
+        } catch (IOException ex) {
+            log.warn("Spatial index file " + file + " could not be written, using in-memory index: " + ex.getLocalizedMessage());
+        }
+        STRPointIndex index = new STRPointIndex();
+        for (int i = 0; i < points.count; i++) {
+            index.add(points.x[i], points.y[i], points.keys[i]);
+        }
+        index.build();
+        return index;
+    }
+
+    private boolean isIntegerKey(String typeName, String keyColumn) throws IOException {
+        SimpleFeatureType ft = dataStore.getSchema(typeName);
+        AttributeDescriptor descriptor = ft == null ? null : ft.getDescriptor(keyColumn);
+        return descriptor != null && descriptor.getType().getBinding() == Long.class;
+    }
+
+    /**
+     * @return the index file for a type: the database file name followed by
+     * the type name and ".pidx", see {@link SpatialUtil#toFileName(String)}
+     */
+    public File getSidecarFile(String typeName) {
+        return new File(sourceFile.getParentFile(),
+                sourceFile.getName() + "." + SpatialUtil.toFileName(typeName) + ".pidx");
+    }
+
+    /**
+     * Forget all indexes. Memory mapped files are unmapped once the buffers
+     * are garbage collected, so no references to them are kept.
+     */
+    public void clear() {
+        indexes.clear();
+    }
+
+    /**
+     * Growable arrays of points read for a sidecar index.
+     */
+    private static class Points {
+
+        double[] x = new double[1024];
+        double[] y = new double[1024];
+        long[] keys = new long[1024];
+        int count;
+
+        void add(double px, double py, long key) {
+            if (count == keys.length) {
+                x = Arrays.copyOf(x, count * 2);
+                y = Arrays.copyOf(y, count * 2);
+                keys = Arrays.copyOf(keys, count * 2);
+            }
+            x[count] = px;
+            y[count] = py;
+            keys[count++] = key;
+        }
+    }
+
+    private static class IndexEntry {
+
+        final SourceStamp stamp;
+        final PointIndex index;
+
+        IndexEntry(SourceStamp stamp, PointIndex index) {
+            this.stamp = stamp;
+            this.index = index;
+        }
+    }
+}
@@ -8,11 +8,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -22,12 +26,17 @@ import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
 
 public class SpatialUtil {
 
     private static final Log log = LogFactory.getLog(SpatialUtil.class);
 
+    private static final Map<String, CoordinateReferenceSystem> crsCache = new ConcurrentHashMap<>();
+    private static final Map<List<CoordinateReferenceSystem>, MathTransform> transformCache = new ConcurrentHashMap<>();
+
     static public AttributeDescriptor createAttributeType(String label, int sqlType) {
         AttributeDescriptor at = null;
         AttributeTypeBuilder attributeTypeBuilder = new AttributeTypeBuilder();
@@ -85,13 +94,93 @@ public class SpatialUtil {
         return attributeTypes;
     }
 
+    /**
+     * Get the column names and SQL types of many tables with a single
+     * metadata query.
+     *
+     * @param typeNames tables to return the columns of, null for all tables
+     * @return column name to SQL type in column order, per table name
+     */
+    static public Map<String, Map<String, Integer>> getColumnTypes(Collection<String> typeNames, Connection conn) throws SQLException {
+        Map<String, String> requested = null;
+        if (typeNames != null) {
+            requested = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (String typeName : typeNames) {
+                requested.put(typeName, typeName);
+            }
+        }
+        Map<String, Map<String, Integer>> columnTypes = new LinkedHashMap<>();
+        ResultSet rs = conn.getMetaData().getColumns(null, null, null, null);
+        try {
+            while (rs.next()) {
+                String tableName = rs.getString("TABLE_NAME");
+                if (requested != null) {
+                    tableName = requested.get(tableName);
+                    if (tableName == null) {
+                        continue;
+                    }
+                }
+                Map<String, Integer> columns = columnTypes.get(tableName);
+                if (columns == null) {
+                    columns = new LinkedHashMap<>();
+                    columnTypes.put(tableName, columns);
+                }
+                columns.put(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"));
+            }
+        } finally {
+            rs.close();
+        }
+        return columnTypes;
+    }
+
+    /**
+     * Decode a CRS code, caching the result as decoding goes through the EPSG
+     * database.
+     */
+    static public CoordinateReferenceSystem decodeCRS(String epsg) throws FactoryException {
+        CoordinateReferenceSystem crs = crsCache.get(epsg);
+        if (crs == null) {
+            crs = CRS.decode(epsg);
+            crsCache.put(epsg, crs);
+        }
+        return crs;
+    }
+
+    /**
+     * Find the transform between two CRSs, caching the result as finding it
+     * may go through the EPSG database.
+     */
+    static public MathTransform findMathTransform(CoordinateReferenceSystem source, CoordinateReferenceSystem target) throws FactoryException {
+        List<CoordinateReferenceSystem> key = Arrays.asList(source, target);
+        MathTransform transform = transformCache.get(key);
+        if (transform == null) {
+            transform = CRS.findMathTransform(source, target, true);
+            transformCache.put(key, transform);
+        }
+        return transform;
+    }
+
+    /**
+     * Create a feature type from the column types as returned by
+     * getColumnTypes().
+     */
+    static public SimpleFeatureType createFeatureType(String typeName, Map<String, Integer> columnTypes, String epsg) throws Exception {
+        List ats = new ArrayList();
+        for (Map.Entry<String, Integer> column : columnTypes.entrySet()) {
+            ats.add(createAttributeType(column.getKey(), column.getValue()));
+        }
+        return createFeatureType(typeName, ats, epsg);
+    }
+
     static public SimpleFeatureType createFeatureType(String typeName, String epsg, Connection conn) throws Exception {
+        return createFeatureType(typeName, getAttributeTypes(typeName, conn), epsg);
+    }
 
-        List ats = getAttributeTypes(typeName, conn);
+    private static SimpleFeatureType createFeatureType(String typeName, List ats, String epsg) throws Exception {
         if (ats == null || ats.isEmpty()) {
             return null;
         }
-        CoordinateReferenceSystem crs = CRS.decode(epsg);
+        CoordinateReferenceSystem crs = decodeCRS(epsg);
 
         AttributeTypeBuilder atb = new AttributeTypeBuilder();
         atb.setName("the_geom");
@@ -110,6 +199,25 @@ public class SpatialUtil {
         return ftb.buildFeatureType();
     }
 
+    /**
+     * @return the name of the primary key column of a table, null if the
+     * table has no primary key or a compound key
+     */
+    static public String getPrimaryKeyColumn(String typeName, Connection conn) throws SQLException {
+        ResultSet rs = conn.getMetaData().getPrimaryKeys(null, null, typeName);
+        String column = null;
+        int count = 0;
+        try {
+            while (rs.next()) {
+                column = rs.getString("COLUMN_NAME");
+                count++;
+            }
+        } finally {
+            rs.close();
+        }
+        return count == 1 ? column : null;
+    }
+
     static public List getTableNames(Connection conn) throws SQLException {
         DatabaseMetaData dbmd = conn.getMetaData();
         String[] types = new String[]{"TABLE", "VIEW"};
@@ -168,26 +276,18 @@ public class SpatialUtil {
 
         log.debug("query: " + q.toString());
 
+        PreparedStatement statement = conn.prepareStatement(q.toString());
         try {
-            PreparedStatement statement = conn.prepareStatement(q.toString());
-            try {
-                ResultSet rs = statement.executeQuery();
-                while (rs.next()) {
-                    if (controlerColumnType != null) {
-                        controlerMap.put(rs.getString(controlerColumnName), rs.getString(controlerColumnType));
-                    } else {
-                        controlerMap.put(rs.getString(controlerColumnName), "");
-                    }
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                if (controlerColumnType != null) {
+                    controlerMap.put(rs.getString(controlerColumnName), rs.getString(controlerColumnType));
+                } else {
+                    controlerMap.put(rs.getString(controlerColumnName), "");
                 }
-            } finally {
-                statement.close();
             }
         } finally {
-            try {
-                conn.close();
-            } catch (SQLException ex) {
-                log.error("", ex);
-            }
+            statement.close();
         }
 
         if (log.isDebugEnabled() && controlerMap != null) {
@@ -215,4 +315,48 @@ public class SpatialUtil {
         }
         return (String[]) layerMap.keySet().toArray(new String[layerMap.size()]);
     }
+
+    /**
+     * Make a name usable as part of a file name. When characters had to be
+     * replaced, the hash of the name is added so different names do not end
+     * up with the same file name.
+     */
+    static public String toFileName(String name) {
+        String safe = name.replaceAll("[^A-Za-z0-9_-]", "_");
+        return safe.equals(name) ? name : safe + "." + Integer.toHexString(name.hashCode());
+    }
+
+    /**
+     * Quote an identifier for use in a query.
+     *
+     * @param name table or column name
+     * @param quote quote string as returned by
+     * DatabaseMetaData.getIdentifierQuoteString(), null or " " for none
+     */
+    static public String quote(String name, String quote) {
+        if (quote == null || quote.trim().isEmpty()) {
+            return name;
+        }
+        return quote + name + quote;
+    }
+
+    static public String getIdentifierQuote(Connection conn) throws SQLException {
+        String quote = conn.getMetaData().getIdentifierQuoteString();
+        return quote == null || quote.trim().isEmpty() ? "" : quote.trim();
+    }
+
+    /**
+     * Close a connection, statement or result set, logging instead of
+     * throwing any exception.
+     */
+    static public void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception ex) {
+            log.debug("Mogelijk probleem met sluiten van DB verbinding", ex);
+        }
+    }
 }
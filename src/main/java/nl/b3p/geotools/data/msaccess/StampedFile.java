@@ -0,0 +1,94 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary file next to the database with data derived from it. The file
+ * starts with a magic number and version (int), followed by the
+ * {@link SourceStamp} of the database (size and modification time, long)
+ * when the whole file is derived from one state of the database. It is
+ * written to a temporary file first and renamed, so a reader never sees a
+ * partly written file.
+ */
+final class StampedFile {
+
+    private StampedFile() {
+    }
+
+    /**
+     * Writes the content of a file after the header.
+     */
+    interface Content {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * @param stamp stamp of the database to write in the header, null for a
+     * header without stamp
+     */
+    static void write(File file, int magic, int version, SourceStamp stamp, Content content) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            if (stamp != null) {
+                out.writeLong(stamp.getSize());
+                out.writeLong(stamp.getLastModified());
+            }
+            content.write(out);
+        } catch (IOException ex) {
+            tmp.delete();
+            throw ex;
+        }
+        if (file.exists() && !file.delete()) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    /**
+     * Open a file and read the header.
+     *
+     * @param stamp the stamp the file must have been written for, null for a
+     * header without stamp
+     * @return the stream positioned after the header, null if the file has
+     * another format, version or stamp
+     */
+    static DataInputStream open(File file, int magic, int version, SourceStamp stamp) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() == magic && in.readInt() == version
+                    && (stamp == null || stamp.equals(new SourceStamp(in.readLong(), in.readLong())))) {
+                return in;
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+        in.close();
+        return null;
+    }
+
+    /**
+     * @return true if a mapped file has the header of a file of this format,
+     * version and stamp
+     */
+    static boolean hasHeader(ByteBuffer buffer, int magic, int version, SourceStamp stamp) {
+        return buffer.capacity() >= 24
+                && buffer.getInt(0) == magic && buffer.getInt(4) == version
+                && stamp.equals(new SourceStamp(buffer.getLong(8), buffer.getLong(16)));
+    }
+}
@@ -0,0 +1,334 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * All rows of a table held in memory column by column: numeric and date
+ * columns as primitive arrays, timestamps as milliseconds plus nanoseconds,
+ * strings dictionary encoded and the point geometry as x/y arrays. Features are only created when a row is read.
+ *
+ * The arrays grown while reading are kept as they are, so they may be
+ * longer than the number of rows.
+ */
+public class TableSnapshot {
+
+    private final SimpleFeatureType featureType;
+    private final GeometryFactory geometryFactory;
+    private final int size;
+    private final byte[] types;
+    private final int geometryIndex;
+    private final int fidAttribute;
+    /**
+     * Per attribute a long[], double[], int[] (string codes) or Object[].
+     */
+    private final Object[] columns;
+    /**
+     * Per timestamp attribute the nanoseconds of the timestamps.
+     */
+    private final int[][] nanos;
+    private final String[][] dictionaries;
+    private final BitSet[] nulls;
+    private final double[] xs;
+    private final double[] ys;
+    private final BitSet noGeometry;
+    private final long byteSize;
+
+    private TableSnapshot(Builder b) {
+        featureType = b.mapping.getFeatureType();
+        geometryFactory = b.mapping.getGeometryFactory();
+        geometryIndex = b.mapping.getGeometryIndex();
+        fidAttribute = b.fidAttribute;
+        size = b.size;
+        types = b.types;
+        columns = new Object[types.length];
+        dictionaries = new String[types.length][];
+        nulls = b.nulls;
+        nanos = b.nanos;
+        for (int i = 0; i < types.length; i++) {
+            columns[i] = b.columns[i];
+            if (types[i] == RowMapping.TYPE_STRING) {
+                dictionaries[i] = b.dictionaries[i].toArray(new String[b.dictionaries[i].size()]);
+            }
+        }
+        xs = b.xs;
+        ys = b.ys;
+        noGeometry = b.noGeometry;
+        byteSize = b.getByteSize();
+    }
+
+    /**
+     * Read all rows of a result set selected with mapping.getSelect().
+     */
+    public static TableSnapshot read(RowMapping mapping, ResultSet rs) throws SQLException {
+        return read(mapping, rs, -1);
+    }
+
+    /**
+     * @param fidAttribute attribute to build the feature ids from, -1 to use
+     * the row number
+     */
+    public static TableSnapshot read(RowMapping mapping, ResultSet rs, int fidAttribute) throws SQLException {
+        return read(mapping, rs, fidAttribute, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxBytes memory the snapshot may use, reading stops as soon as
+     * the estimate exceeds it
+     * @return the snapshot, null if it does not fit in maxBytes
+     */
+    public static TableSnapshot read(RowMapping mapping, ResultSet rs, int fidAttribute, long maxBytes) throws SQLException {
+        Builder builder = new Builder(mapping, maxBytes);
+        builder.fidAttribute = fidAttribute;
+        Object[] values = new Object[mapping.getFeatureType().getAttributeCount()];
+        RowBuffer row = new RowBuffer(values.length);
+        while (rs.next()) {
+            builder.add(mapping.read(rs, row, values));
+            if (builder.getByteSize() > maxBytes) {
+                return null;
+            }
+        }
+        return new TableSnapshot(builder);
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return estimated memory used by this snapshot
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * @return true if the row has a point within the envelope
+     */
+    public boolean pointWithin(int row, double minX, double maxX, double minY, double maxY) {
+        if (noGeometry.get(row)) {
+            return false;
+        }
+        double x = xs[row];
+        double y = ys[row];
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    public SimpleFeature getFeature(int row) {
+        Object[] values = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            if (i == geometryIndex) {
+                values[i] = noGeometry.get(row) ? null : geometryFactory.createPoint(new Coordinate(xs[row], ys[row]));
+                continue;
+            }
+            if (nulls[i] != null && nulls[i].get(row)) {
+                continue;
+            }
+            switch (types[i]) {
+                case RowMapping.TYPE_LONG:
+                    values[i] = ((long[]) columns[i])[row];
+                    break;
+                case RowMapping.TYPE_TIMESTAMP: {
+                    Timestamp timestamp = new Timestamp(((long[]) columns[i])[row]);
+                    timestamp.setNanos(nanos[i][row]);
+                    values[i] = timestamp;
+                    break;
+                }
+                case RowMapping.TYPE_DOUBLE:
+                    values[i] = ((double[]) columns[i])[row];
+                    break;
+                case RowMapping.TYPE_STRING:
+                    values[i] = dictionaries[i][((int[]) columns[i])[row]];
+                    break;
+                case RowMapping.TYPE_OBJECT:
+                    values[i] = ((Object[]) columns[i])[row];
+                    break;
+                default:
+                    break;
+            }
+        }
+        Object key = fidAttribute >= 0 ? values[fidAttribute] : null;
+        String fid = key != null ? featureType.getTypeName() + "." + key : Integer.toString(row);
+        return new SimpleFeatureImpl(values, featureType, new FeatureIdImpl(fid), false);
+    }
+
+    /**
+     * Growable columns used while reading the table, with an estimate of the
+     * memory they use.
+     */
+    private static class Builder {
+
+        final RowMapping mapping;
+        final long maxBytes;
+        final byte[] types;
+        final Object[] columns;
+        final int[][] nanos;
+        final BitSet[] nulls;
+        final Map<String, Integer>[] codes;
+        final List<String>[] dictionaries;
+        int fidAttribute = -1;
+        double[] xs = new double[256];
+        double[] ys = new double[256];
+        final BitSet noGeometry = new BitSet();
+        int size;
+        /**
+         * Bytes per row of the arrays, and of the dictionaries and null bits.
+         */
+        long rowBytes = 16;
+        long dictionaryBytes = 0;
+        int nullColumns = 0;
+
+        @SuppressWarnings("unchecked")
+        Builder(RowMapping mapping, long maxBytes) {
+            this.mapping = mapping;
+            this.maxBytes = maxBytes;
+            int count = mapping.getFeatureType().getAttributeCount();
+            types = new byte[count];
+            columns = new Object[count];
+            nanos = new int[count][];
+            nulls = new BitSet[count];
+            codes = new Map[count];
+            dictionaries = new List[count];
+            for (int i = 0; i < count; i++) {
+                types[i] = mapping.getType(i);
+                nulls[i] = new BitSet();
+                switch (types[i]) {
+                    case RowMapping.TYPE_LONG:
+                        columns[i] = new long[256];
+                        rowBytes += 8;
+                        break;
+                    case RowMapping.TYPE_TIMESTAMP:
+                        columns[i] = new long[256];
+                        nanos[i] = new int[256];
+                        rowBytes += 12;
+                        break;
+                    case RowMapping.TYPE_DOUBLE:
+                        columns[i] = new double[256];
+                        rowBytes += 8;
+                        break;
+                    case RowMapping.TYPE_STRING:
+                        columns[i] = new int[256];
+                        codes[i] = new HashMap<>();
+                        dictionaries[i] = new ArrayList<>();
+                        rowBytes += 4;
+                        break;
+                    case RowMapping.TYPE_OBJECT:
+                        columns[i] = new Object[256];
+                        rowBytes += 24;
+                        break;
+                    default:
+                        nulls[i] = null;
+                        break;
+                }
+                if (nulls[i] != null) {
+                    nullColumns++;
+                }
+            }
+        }
+
+        /**
+         * @return estimated memory used by the arrays as allocated, the
+         * dictionaries and the null bits
+         */
+        long getByteSize() {
+            return 64 + xs.length * rowBytes + dictionaryBytes + (long) size * nullColumns / 8;
+        }
+
+        void add(Object[] values) {
+            if (size == xs.length) {
+                grow();
+            }
+            for (int i = 0; i < types.length; i++) {
+                Object value = values[i];
+                if (types[i] == RowMapping.TYPE_GEOMETRY) {
+                    if (value instanceof Point) {
+                        xs[size] = ((Point) value).getX();
+                        ys[size] = ((Point) value).getY();
+                    } else {
+                        noGeometry.set(size);
+                    }
+                    continue;
+                }
+                if (value == null) {
+                    nulls[i].set(size);
+                    continue;
+                }
+                switch (types[i]) {
+                    case RowMapping.TYPE_LONG:
+                        ((long[]) columns[i])[size] = ((Number) value).longValue();
+                        break;
+                    case RowMapping.TYPE_TIMESTAMP:
+                        ((long[]) columns[i])[size] = ((Timestamp) value).getTime();
+                        nanos[i][size] = ((Timestamp) value).getNanos();
+                        break;
+                    case RowMapping.TYPE_DOUBLE:
+                        ((double[]) columns[i])[size] = ((Number) value).doubleValue();
+                        break;
+                    case RowMapping.TYPE_STRING: {
+                        Integer code = codes[i].get(value);
+                        if (code == null) {
+                            code = dictionaries[i].size();
+                            dictionaries[i].add((String) value);
+                            codes[i].put((String) value, code);
+                            // the string, and its entries in the list and map
+                            dictionaryBytes += 48 + ((String) value).length() * 2L + 40;
+                        }
+                        ((int[]) columns[i])[size] = code;
+                        break;
+                    }
+                    default:
+                        ((Object[]) columns[i])[size] = value;
+                        break;
+                }
+            }
+            if (mapping.getGeometryIndex() < 0) {
+                noGeometry.set(size);
+            }
+            size++;
+        }
+
+        /**
+         * Double the arrays, but not beyond one row more than fits in the
+         * budget, so reading stops before allocating much more than that.
+         */
+        private void grow() {
+            long fit = (maxBytes - (getByteSize() - xs.length * rowBytes)) / rowBytes;
+            int capacity = (int) Math.max(size + 1L, Math.min(size * 2L, fit + 1));
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            for (int i = 0; i < types.length; i++) {
+                Object column = columns[i];
+                if (column instanceof long[]) {
+                    columns[i] = Arrays.copyOf((long[]) column, capacity);
+                } else if (column instanceof double[]) {
+                    columns[i] = Arrays.copyOf((double[]) column, capacity);
+                } else if (column instanceof int[]) {
+                    columns[i] = Arrays.copyOf((int[]) column, capacity);
+                } else if (column instanceof Object[]) {
+                    columns[i] = Arrays.copyOf((Object[]) column, capacity);
+                }
+                if (nanos[i] != null) {
+                    nanos[i] = Arrays.copyOf(nanos[i], capacity);
+                }
+            }
+        }
+    }
+}
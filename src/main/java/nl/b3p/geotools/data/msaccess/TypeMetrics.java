@@ -0,0 +1,105 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Query and read statistics of one type name. Time spent in the driver
+ * (executing queries, moving the cursor and getting column values) is
+ * counted separately from building features.
+ */
+public class TypeMetrics {
+
+    static final long[] LATENCY_BUCKET_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private final String typeName;
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKET_MILLIS.length + 1);
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder jdbcNanos = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+
+    public TypeMetrics(String typeName) {
+        this.typeName = typeName;
+    }
+
+    void queryExecuted(long nanos) {
+        queries.increment();
+        queryNanos.add(nanos);
+        long millis = nanos / 1000000L;
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKET_MILLIS.length && millis >= LATENCY_BUCKET_MILLIS[bucket]) {
+            bucket++;
+        }
+        latencies.incrementAndGet(bucket);
+    }
+
+    void rowsRead(long rows, long jdbc, long decode) {
+        rowsRead.add(rows);
+        jdbcNanos.add(jdbc);
+        decodeNanos.add(decode);
+    }
+
+    void reset() {
+        queries.reset();
+        queryNanos.reset();
+        for (int i = 0; i < latencies.length(); i++) {
+            latencies.set(i, 0);
+        }
+        rowsRead.reset();
+        jdbcNanos.reset();
+        decodeNanos.reset();
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public double getMeanQueryMillis() {
+        long count = queries.sum();
+        return count == 0 ? 0 : queryNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * @return number of queries per latency bucket
+     */
+    public long[] getQueryLatencyHistogram() {
+        long[] histogram = new long[latencies.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latencies.get(i);
+        }
+        return histogram;
+    }
+
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    /**
+     * @return rows read per second of time spent executing queries and
+     * reading rows
+     */
+    public double getRowsPerSecond() {
+        long nanos = jdbcNanos.sum() + decodeNanos.sum();
+        return nanos == 0 ? 0 : rowsRead.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * @return time spent in the driver executing queries and reading rows
+     */
+    public long getJdbcMillis() {
+        return jdbcNanos.sum() / 1000000L;
+    }
+
+    /**
+     * @return time spent creating features from the rows read
+     */
+    public long getDecodeMillis() {
+        return decodeNanos.sum() / 1000000L;
+    }
+}
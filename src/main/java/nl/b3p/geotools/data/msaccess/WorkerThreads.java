@@ -0,0 +1,63 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Bounded executors for parallel reads. Virtual threads are used when the
+ * JDK supports them, they are looked up by reflection so the datastore still
+ * runs on older JDKs.
+ */
+public class WorkerThreads {
+
+    private static final Log log = LogFactory.getLog(WorkerThreads.class);
+
+    private static final ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+
+    private WorkerThreads() {
+    }
+
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (Exception ex) {
+            log.debug("Virtual threads not available, using platform threads");
+            return null;
+        }
+    }
+
+    /**
+     * @return a factory for virtual threads, or for daemon threads named
+     * name-n when virtual threads are not available
+     */
+    public static ThreadFactory threadFactory(final String name) {
+        if (virtualThreadFactory != null) {
+            return virtualThreadFactory;
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * @return an executor running at most threads tasks at the same time
+     */
+    public static ExecutorService newExecutor(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, threadFactory(name));
+    }
+
+    /**
+     * @return an executor starting threads as needed and reusing idle ones
+     */
+    public static ExecutorService newCachedExecutor(String name) {
+        return Executors.newCachedThreadPool(threadFactory(name));
+    }
+}
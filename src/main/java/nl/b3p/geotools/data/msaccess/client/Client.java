@@ -63,6 +63,7 @@ public class Client {
 
         Map dbconfig = new HashMap();
         dbconfig.put(MsAccessDataStoreFactory.PARAM_URL.key, p2.getProperty("url", "C:/dev/OBIS.mdb"));
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_BACKEND.key, p2.getProperty("backend", "ucanaccess"));
         dbconfig.put(MsAccessDataStoreFactory.PARAM_CONTROLER_TABLE.key, p2.getProperty("controlerTable", "_TABLES"));
         dbconfig.put(MsAccessDataStoreFactory.PARAM_CONTROLER_COLUMN_NAME.key, p2.getProperty("controlerColumnName", "TABLENAME"));
         dbconfig.put(MsAccessDataStoreFactory.PARAM_CONTROLER_COLUMN_TYPE.key, p2.getProperty("controlerColumnType", "TABLETYPE"));
@@ -79,28 +80,40 @@ public class Client {
         }
 
         String[] typeNames2Read = dataStore2Read.getTypeNames();
-        for (int j = 0; j < 5; j++) {
+        for (int j = 0; j < Math.min(5, typeNames2Read.length); j++) {
             String typeName2Read = typeNames2Read[j];
             log.info("Reading: " + typeName2Read);
 
             FeatureSource features2Read = dataStore2Read.getFeatureSource(typeName2Read);
             FeatureCollection fc = features2Read.getFeatures();
 
+            log.info("count: " + fc.size() + ", bounds: " + fc.getBounds());
+
             int loop=0;
             FeatureIterator fit = fc.features();
-            while (fit.hasNext()) {
-                SimpleFeature f = (SimpleFeature)fit.next();
-                loop++;
+            try {
+                while (fit.hasNext()) {
+                    SimpleFeature f = (SimpleFeature)fit.next();
+                    loop++;
 
-                log.info("feature " + f.getIdentifier().getID());
-                SimpleFeatureType ft = (SimpleFeatureType)f.getType();
+                    log.info("feature " + f.getIdentifier().getID());
+                    SimpleFeatureType ft = (SimpleFeatureType)f.getType();
 
-                for(AttributeDescriptor descriptor : ft.getAttributeDescriptors()){
-                    log.info(descriptor.getName().getLocalPart() + ": "+ f.getAttribute(descriptor.getName()));
+                    for(AttributeDescriptor descriptor : ft.getAttributeDescriptors()){
+                        log.info(descriptor.getName().getLocalPart() + ": "+ f.getAttribute(descriptor.getName()));
+                    }
                 }
+            } finally {
+                fit.close();
             }
             log.info("number of features: " + loop);
         }
 
+        long start = System.currentTimeMillis();
+        Map<String, Integer> counts = ((MsAccessDataStore) dataStore2Read).exportAll(typeNames2Read, 0, f -> {
+        });
+        log.info("read " + counts.size() + " layers in parallel in " + (System.currentTimeMillis() - start) + " ms: " + counts);
+        dataStore2Read.dispose();
+
     }
 }
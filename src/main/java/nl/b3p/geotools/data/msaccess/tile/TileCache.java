@@ -0,0 +1,248 @@
+package nl.b3p.geotools.data.msaccess.tile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import nl.b3p.geotools.data.msaccess.SourceStamp;
+import nl.b3p.geotools.data.msaccess.SpatialUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Encoded tiles kept in memory and optionally on disk, both within a byte
+ * budget. Tiles are cached per layer, a name for everything the tiles
+ * depend on besides the data, such as the database, type and tile extent.
+ * They are stored with the stamp of the database they were made from and
+ * are not returned after the file changes.
+ *
+ * On disk a tile is stored as
+ * <code>&lt;dir&gt;/&lt;layer&gt;/&lt;size&gt;-&lt;mtime&gt;/&lt;z&gt;/&lt;x&gt;/&lt;y&gt;.mvt</code>,
+ * with the layer name made safe for use as a file name. Tiles already in
+ * the directory count for the budget, the oldest are deleted first.
+ */
+public class TileCache {
+
+    private static final Log log = LogFactory.getLog(TileCache.class);
+
+    private final long maxMemoryBytes;
+    private final File directory;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<File, Long> files = new LinkedHashMap<>();
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+
+    /**
+     * @param directory directory for the tile files, null to keep tiles in
+     * memory only
+     */
+    public TileCache(long maxMemoryBytes, File directory, long maxDiskBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        if (directory != null) {
+            addExisting();
+        }
+    }
+
+    /**
+     * Count the tiles of earlier runs, oldest first, and delete what does
+     * not fit the budget.
+     */
+    private void addExisting() {
+        List<File> existing = new ArrayList<>();
+        list(directory, existing);
+        existing.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : existing) {
+            files.put(file, file.length());
+            diskBytes += file.length();
+        }
+        trimDisk(0);
+        if (!existing.isEmpty()) {
+            log.debug("Found " + existing.size() + " cached tiles of " + diskBytes + " bytes in " + directory);
+        }
+    }
+
+    private static void list(File dir, List<File> tiles) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                list(child, tiles);
+            } else if (child.getName().endsWith(".mvt")) {
+                tiles.add(child);
+            } else if (child.getName().endsWith(".tmp")) {
+                child.delete();
+            }
+        }
+    }
+
+    private static String key(String layer, int z, int x, int y) {
+        return layer + "/" + z + "/" + x + "/" + y;
+    }
+
+    private File getLayerDirectory(String layer) {
+        return new File(directory, SpatialUtil.toFileName(layer));
+    }
+
+    private static String getVersion(SourceStamp stamp) {
+        return stamp.getSize() + "-" + stamp.getLastModified();
+    }
+
+    private File getFile(String layer, SourceStamp stamp, int z, int x, int y) {
+        return new File(getLayerDirectory(layer), getVersion(stamp) + File.separator
+                + z + File.separator + x + File.separator + y + ".mvt");
+    }
+
+    /**
+     * @return the tile made for stamp, null if it is not cached
+     */
+    public synchronized byte[] get(String layer, SourceStamp stamp, int z, int x, int y) {
+        String key = key(layer, z, x, y);
+        Entry entry = memory.get(key);
+        if (entry != null) {
+            if (entry.stamp.equals(stamp)) {
+                return entry.tile;
+            }
+            memoryBytes -= entry.tile.length;
+            memory.remove(key);
+        }
+        if (directory == null || stamp == null) {
+            return null;
+        }
+        File file = getFile(layer, stamp, z, x, y);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] tile = Files.readAllBytes(file.toPath());
+            putMemory(key, stamp, tile);
+            return tile;
+        } catch (IOException ex) {
+            log.debug("Tile " + file + " could not be read", ex);
+            return null;
+        }
+    }
+
+    public synchronized void put(String layer, SourceStamp stamp, int z, int x, int y, byte[] tile) {
+        if (stamp == null) {
+            return;
+        }
+        putMemory(key(layer, z, x, y), stamp, tile);
+        if (directory != null && tile.length <= maxDiskBytes) {
+            putDisk(getFile(layer, stamp, z, x, y), tile);
+        }
+    }
+
+    private void putMemory(String key, SourceStamp stamp, byte[] tile) {
+        Entry old = memory.remove(key);
+        if (old != null) {
+            memoryBytes -= old.tile.length;
+        }
+        if (tile.length > maxMemoryBytes) {
+            return;
+        }
+        Iterator<Entry> it = memory.values().iterator();
+        while (memoryBytes + tile.length > maxMemoryBytes && it.hasNext()) {
+            memoryBytes -= it.next().tile.length;
+            it.remove();
+        }
+        memory.put(key, new Entry(stamp, tile));
+        memoryBytes += tile.length;
+    }
+
+    /**
+     * Delete the oldest tile files until there is room for bytes more.
+     */
+    private void trimDisk(long bytes) {
+        Iterator<Map.Entry<File, Long>> it = files.entrySet().iterator();
+        while (diskBytes + bytes > maxDiskBytes && it.hasNext()) {
+            Map.Entry<File, Long> eldest = it.next();
+            eldest.getKey().delete();
+            diskBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private void putDisk(File file, byte[] tile) {
+        trimDisk(tile.length);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(tmp.toPath(), tile);
+            if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Could not write " + file);
+            }
+            Long old = files.put(file, (long) tile.length);
+            diskBytes += tile.length - (old == null ? 0 : old);
+        } catch (IOException ex) {
+            tmp.delete();
+            log.warn("Tile could not be cached: " + ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Delete the cached tiles of a layer that were made from other versions
+     * of the database.
+     */
+    public synchronized void purge(String layer, SourceStamp stamp) {
+        if (directory == null) {
+            return;
+        }
+        File[] versions = getLayerDirectory(layer).listFiles();
+        if (versions == null) {
+            return;
+        }
+        for (File version : versions) {
+            if (stamp == null || !version.getName().equals(getVersion(stamp))) {
+                delete(version);
+            }
+        }
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Long size = files.remove(file);
+        if (size != null) {
+            diskBytes -= size;
+        }
+        file.delete();
+    }
+
+    public synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    private static class Entry {
+
+        final SourceStamp stamp;
+        final byte[] tile;
+
+        Entry(SourceStamp stamp, byte[] tile) {
+            this.stamp = stamp;
+            this.tile = tile;
+        }
+    }
+}
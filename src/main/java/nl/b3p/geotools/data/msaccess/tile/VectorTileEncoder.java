@@ -0,0 +1,187 @@
+package nl.b3p.geotools.data.msaccess.tile;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a Mapbox Vector Tile (version 2) with one layer of points. The
+ * protocol buffer encoding is written by hand, only the messages and fields
+ * needed for points are supported.
+ */
+public class VectorTileEncoder {
+
+    public static final int DEFAULT_EXTENT = 4096;
+
+    private static final int GEOM_TYPE_POINT = 1;
+    private static final int COMMAND_MOVE_TO = 1;
+
+    private static final int WIRETYPE_VARINT = 0;
+    private static final int WIRETYPE_64BIT = 1;
+    private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+
+    private final String layerName;
+    private final int extent;
+    private final Map<String, Integer> keys = new LinkedHashMap<>();
+    private final Map<Object, Integer> values = new LinkedHashMap<>();
+    private final List<byte[]> features = new ArrayList<>();
+
+    public VectorTileEncoder(String layerName, int extent) {
+        this.layerName = layerName;
+        this.extent = extent;
+    }
+
+    public int getExtent() {
+        return extent;
+    }
+
+    public int getFeatureCount() {
+        return features.size();
+    }
+
+    /**
+     * Add a point feature.
+     *
+     * @param id feature id, negative for none
+     * @param x column in tile coordinates, 0 to extent from left to right
+     * @param y row in tile coordinates, 0 to extent from top to bottom
+     * @param attributes attribute values by name; null values and values of
+     * unsupported types are left out
+     */
+    public void addPoint(long id, int x, int y, Map<String, Object> attributes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (id >= 0) {
+            writeTag(out, 1, WIRETYPE_VARINT);
+            writeVarint(out, id);
+        }
+        ByteArrayOutputStream tags = new ByteArrayOutputStream();
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            Object value = toTileValue(attribute.getValue());
+            if (value == null) {
+                continue;
+            }
+            writeVarint(tags, index(keys, attribute.getKey()));
+            writeVarint(tags, index(values, value));
+        }
+        if (tags.size() > 0) {
+            writeBytes(out, 2, tags.toByteArray());
+        }
+        writeTag(out, 3, WIRETYPE_VARINT);
+        writeVarint(out, GEOM_TYPE_POINT);
+
+        ByteArrayOutputStream geometry = new ByteArrayOutputStream();
+        writeVarint(geometry, (COMMAND_MOVE_TO & 0x7) | (1 << 3));
+        writeVarint(geometry, zigZag(x));
+        writeVarint(geometry, zigZag(y));
+        writeBytes(out, 4, geometry.toByteArray());
+
+        features.add(out.toByteArray());
+    }
+
+    /**
+     * @return the encoded tile, empty if no features were added
+     */
+    public byte[] encode() {
+        if (features.isEmpty()) {
+            return new byte[0];
+        }
+        ByteArrayOutputStream layer = new ByteArrayOutputStream();
+        writeTag(layer, 15, WIRETYPE_VARINT);
+        writeVarint(layer, 2);
+        writeBytes(layer, 1, utf8(layerName));
+        for (byte[] feature : features) {
+            writeBytes(layer, 2, feature);
+        }
+        for (String key : keys.keySet()) {
+            writeBytes(layer, 3, utf8(key));
+        }
+        for (Object value : values.keySet()) {
+            writeBytes(layer, 4, encodeValue(value));
+        }
+        writeTag(layer, 5, WIRETYPE_VARINT);
+        writeVarint(layer, extent);
+
+        ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        writeBytes(tile, 3, layer.toByteArray());
+        return tile.toByteArray();
+    }
+
+    private static <T> int index(Map<T, Integer> dictionary, T value) {
+        Integer index = dictionary.get(value);
+        if (index == null) {
+            index = dictionary.size();
+            dictionary.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return String, Double, Long or Boolean, null if the value can not be
+     * written
+     */
+    private static Object toTileValue(Object value) {
+        if (value instanceof String || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        return null;
+    }
+
+    private static byte[] encodeValue(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (value instanceof String) {
+            writeBytes(out, 1, utf8((String) value));
+        } else if (value instanceof Double) {
+            writeTag(out, 3, WIRETYPE_64BIT);
+            long bits = Double.doubleToLongBits((Double) value);
+            for (int i = 0; i < 8; i++) {
+                out.write((int) (bits >>> (i * 8)) & 0xff);
+            }
+        } else if (value instanceof Long) {
+            writeTag(out, 6, WIRETYPE_VARINT);
+            writeVarint(out, zigZag((Long) value));
+        } else {
+            writeTag(out, 7, WIRETYPE_VARINT);
+            writeVarint(out, ((Boolean) value) ? 1 : 0);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        writeVarint(out, (field << 3) | wireType);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int field, byte[] bytes) {
+        writeTag(out, field, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
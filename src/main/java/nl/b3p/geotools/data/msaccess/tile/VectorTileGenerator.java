@@ -0,0 +1,191 @@
+package nl.b3p.geotools.data.msaccess.tile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import nl.b3p.geotools.data.msaccess.MsAccessDataStore;
+import nl.b3p.geotools.data.msaccess.SourceStamp;
+import nl.b3p.geotools.data.msaccess.SpatialUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Makes Mapbox Vector Tiles of the types of a {@link MsAccessDataStore} in
+ * the z/x/y scheme of web mercator (EPSG:3857). Only the rows inside the bbox
+ * of the tile are read, using the x/y columns. Other geometries than points
+ * are written as their centroid.
+ *
+ * Tiles are cached when a {@link TileCache} is given and the database is a
+ * local file, so its modification time can be checked.
+ */
+public class VectorTileGenerator {
+
+    private static final Log log = LogFactory.getLog(VectorTileGenerator.class);
+
+    private static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    public static final String TILE_CRS = "EPSG:3857";
+    public static final double WORLD_EXTENT = 20037508.342789244;
+
+    /**
+     * Points up to this number of tile units outside the tile are included,
+     * so symbols on the edge of a tile are not cut off.
+     */
+    public static final int BUFFER = 64;
+
+    private final MsAccessDataStore dataStore;
+    private final TileCache cache;
+    private final int extent;
+    private final CoordinateReferenceSystem tileCRS;
+    private final Map<String, SourceStamp> purged = new ConcurrentHashMap<>();
+
+    /**
+     * @param cache cache for the tiles, null to make every tile again
+     */
+    public VectorTileGenerator(MsAccessDataStore dataStore, TileCache cache) throws IOException {
+        this(dataStore, cache, VectorTileEncoder.DEFAULT_EXTENT);
+    }
+
+    public VectorTileGenerator(MsAccessDataStore dataStore, TileCache cache, int extent) throws IOException {
+        this.dataStore = dataStore;
+        this.cache = cache;
+        this.extent = extent;
+        try {
+            this.tileCRS = SpatialUtil.decodeCRS(TILE_CRS);
+        } catch (FactoryException ex) {
+            throw new IOException(ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return the bounds of a tile in web mercator
+     */
+    public ReferencedEnvelope getTileEnvelope(int z, int x, int y) {
+        double size = 2 * WORLD_EXTENT / (1 << z);
+        double minX = -WORLD_EXTENT + x * size;
+        double maxY = WORLD_EXTENT - y * size;
+        return new ReferencedEnvelope(minX, minX + size, maxY - size, maxY, tileCRS);
+    }
+
+    /**
+     * @return the encoded tile, an empty array if there are no features in it
+     */
+    public byte[] getTile(String typeName, int z, int x, int y) throws IOException {
+        if (z < 0 || z > 30 || x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z)) {
+            throw new IllegalArgumentException("Invalid tile " + z + "/" + x + "/" + y);
+        }
+        SourceStamp stamp = SourceStamp.of(dataStore.getSourceFile());
+        String layer = cache == null || stamp == null ? null : getLayer(typeName);
+        if (layer != null) {
+            byte[] tile = cache.get(layer, stamp, z, x, y);
+            if (tile != null) {
+                return tile;
+            }
+        }
+        byte[] tile = createTile(typeName, z, x, y);
+        if (layer != null) {
+            if (!stamp.equals(purged.put(layer, stamp))) {
+                cache.purge(layer, stamp);
+            }
+            cache.put(layer, stamp, z, x, y, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * @return the name of the tiles of a type in the cache, with the path of
+     * the database and the extent, so a cache can be shared by generators
+     * for several databases and extents
+     */
+    private String getLayer(String typeName) {
+        File sourceFile = dataStore.getSourceFile();
+        return sourceFile.getName() + "@" + Integer.toHexString(sourceFile.getAbsolutePath().hashCode())
+                + "/" + typeName + "/" + extent;
+    }
+
+    private byte[] createTile(String typeName, int z, int x, int y) throws IOException {
+        SimpleFeatureType schema = dataStore.getSchema(typeName);
+        VectorTileEncoder encoder = new VectorTileEncoder(typeName, extent);
+        if (schema == null || schema.getGeometryDescriptor() == null) {
+            return encoder.encode();
+        }
+        ReferencedEnvelope tile = getTileEnvelope(z, x, y);
+        double scale = extent / tile.getWidth();
+        ReferencedEnvelope buffered = new ReferencedEnvelope(tile);
+        buffered.expandBy(BUFFER / scale);
+
+        // the bbox in the coordinates of the table, so it is done on the x/y columns
+        ReferencedEnvelope bbox = buffered;
+        if (schema.getCoordinateReferenceSystem() != null) {
+            try {
+                bbox = buffered.transform(schema.getCoordinateReferenceSystem(), true);
+            } catch (TransformException | FactoryException ex) {
+                throw new IOException(ex.getLocalizedMessage());
+            }
+        }
+        String geometryName = schema.getGeometryDescriptor().getLocalName();
+        Query query = new Query(typeName, ff.bbox(geometryName, bbox.getMinX(), bbox.getMinY(), bbox.getMaxX(), bbox.getMaxY(), null));
+        query.setCoordinateSystemReproject(tileCRS);
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = dataStore.getFeatureReader(query, Transaction.AUTO_COMMIT);
+        try {
+            while (reader.hasNext()) {
+                SimpleFeature f = reader.next();
+                Object geometry = f.getDefaultGeometry();
+                if (!(geometry instanceof Geometry) || ((Geometry) geometry).isEmpty()) {
+                    continue;
+                }
+                Point point = geometry instanceof Point ? (Point) geometry : ((Geometry) geometry).getCentroid();
+                int px = (int) Math.round((point.getX() - tile.getMinX()) * scale);
+                int py = (int) Math.round((tile.getMaxY() - point.getY()) * scale);
+                // the reprojected bbox of the query is larger than the tile
+                if (px < -BUFFER || py < -BUFFER || px > extent + BUFFER || py > extent + BUFFER) {
+                    continue;
+                }
+                Map<String, Object> attributes = new LinkedHashMap<>();
+                for (int i = 0; i < f.getAttributeCount(); i++) {
+                    String name = f.getFeatureType().getDescriptor(i).getLocalName();
+                    if (!name.equals(geometryName)) {
+                        attributes.put(name, f.getAttribute(i));
+                    }
+                }
+                encoder.addPoint(getNumericId(f.getID()), px, py, attributes);
+            }
+        } finally {
+            reader.close();
+        }
+        log.debug("Tile " + typeName + "/" + z + "/" + x + "/" + y + ": " + encoder.getFeatureCount() + " features");
+        return encoder.encode();
+    }
+
+    /**
+     * @return the number after the last dot of a feature id, -1 if it does
+     * not end with a number
+     */
+    private static long getNumericId(String fid) {
+        if (fid == null) {
+            return -1;
+        }
+        try {
+            long id = Long.parseLong(fid.substring(fid.lastIndexOf('.') + 1));
+            return id < 0 ? -1 : id;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
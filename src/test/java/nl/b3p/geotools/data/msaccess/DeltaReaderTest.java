@@ -0,0 +1,150 @@
+package nl.b3p.geotools.data.msaccess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeltaReaderTest {
+
+    private static final String POINTS = "POINTS";
+    private static final int ROWS = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String url;
+    private File sourceFile;
+    private MsAccessDataStore store;
+    private final List<String> passed = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        url = TestDatabase.newUrl();
+        TestDatabase.createPoints(url, POINTS, ROWS);
+        sourceFile = folder.newFile("test.mdb");
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.dispose();
+        }
+    }
+
+    private void open(String watermarkLabels, boolean deltaDeletes) throws IOException {
+        Map<String, Object> params = new HashMap<>();
+        if (watermarkLabels != null) {
+            params.put(MsAccessDataStoreFactory.PARAM_WATERMARKLABELS.key, watermarkLabels);
+        }
+        params.put(MsAccessDataStoreFactory.PARAM_DELTA_DELETES.key, deltaDeletes);
+        store = TestDatabase.openDataStore(url, sourceFile, MsAccessDataStore.DEFAULT_POOL_SIZE, params);
+    }
+
+    private DeltaReader.Changes readChanges() throws IOException {
+        passed.clear();
+        return store.readChanges(POINTS, f -> passed.add(f.getID()));
+    }
+
+    /**
+     * Change the stamp of the database file, as a write to it would.
+     */
+    private void touch() {
+        assertTrue(sourceFile.setLastModified(sourceFile.lastModified() + 2000));
+    }
+
+    @Test
+    public void testWatermark() throws Exception {
+        open("CHANGED", false);
+        DeltaReader.Changes changes = readChanges();
+        assertTrue(changes.isFull());
+        assertEquals(ROWS, changes.getChangedCount());
+
+        // not read at all when the database did not change
+        assertEquals(0, readChanges().getChangedCount());
+
+        TestDatabase.insert(url, POINTS, ROWS);
+        touch();
+        changes = readChanges();
+        assertFalse(changes.isFull());
+        assertEquals(Collections.singletonList(POINTS + "." + ROWS), passed);
+        assertTrue(changes.getDeletedIds().isEmpty());
+    }
+
+    @Test
+    public void testRowCommittedLaterAtWatermark() throws Exception {
+        open("CHANGED", false);
+        readChanges();
+
+        // a row with the same last modified time as the last row read
+        TestDatabase.execute(url, "insert into POINTS (ID, X, Y, NAME, CODE, CHANGED)"
+                + " select 1000, X, Y, 'late', CODE, CHANGED from POINTS where ID = " + (ROWS - 1));
+        touch();
+        DeltaReader.Changes changes = readChanges();
+        assertEquals(1, changes.getChangedCount());
+        assertEquals(Collections.singletonList(POINTS + ".1000"), passed);
+
+        touch();
+        assertEquals(0, readChanges().getChangedCount());
+    }
+
+    @Test
+    public void testWatermarkState() throws Exception {
+        open("CHANGED", false);
+        readChanges();
+        store.dispose();
+
+        // read from the state file by a new datastore
+        open("CHANGED", false);
+        TestDatabase.insert(url, POINTS, ROWS);
+        touch();
+        assertEquals(1, readChanges().getChangedCount());
+    }
+
+    @Test
+    public void testDeletes() throws Exception {
+        open("CHANGED", true);
+        readChanges();
+
+        TestDatabase.execute(url, "delete from POINTS where ID = 5");
+        touch();
+        DeltaReader.Changes changes = readChanges();
+        assertEquals(0, changes.getChangedCount());
+        assertEquals(Collections.singletonList(POINTS + ".5"), changes.getDeletedIds());
+    }
+
+    @Test
+    public void testDeletesNotFoundByDefault() throws Exception {
+        open("CHANGED", false);
+        readChanges();
+
+        TestDatabase.execute(url, "delete from POINTS where ID = 5");
+        touch();
+        assertTrue(readChanges().getDeletedIds().isEmpty());
+    }
+
+    @Test
+    public void testContentHash() throws Exception {
+        open(null, false);
+        assertEquals(ROWS, readChanges().getChangedCount());
+
+        TestDatabase.execute(url, "update POINTS set NAME = 'changed' where ID = 7");
+        TestDatabase.execute(url, "delete from POINTS where ID = 8");
+        touch();
+        DeltaReader.Changes changes = readChanges();
+        assertEquals(Collections.singletonList(POINTS + ".7"), passed);
+        assertEquals(Collections.singletonList(POINTS + ".8"), changes.getDeletedIds());
+    }
+}
@@ -0,0 +1,84 @@
+package nl.b3p.geotools.data.msaccess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Envelope;
+
+public class MappedPointIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHilbertCurve() {
+        // the first n * n cells of the curve fill the n x n square at the
+        // origin, every cell next to the one before it
+        int n = 64;
+        int[][] cells = new int[n * n][];
+        for (int x = 0; x < n; x++) {
+            for (int y = 0; y < n; y++) {
+                long d = MappedPointIndex.hilbert(x, y);
+                assertNull(cells[(int) d]);
+                cells[(int) d] = new int[]{x, y};
+            }
+        }
+        for (int d = 1; d < cells.length; d++) {
+            int distance = Math.abs(cells[d][0] - cells[d - 1][0]) + Math.abs(cells[d][1] - cells[d - 1][1]);
+            assertEquals("cells " + (d - 1) + " and " + d, 1, distance);
+        }
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        int count = 20000;
+        Random random = new Random(42);
+        double[] x = new double[count];
+        double[] y = new double[count];
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = random.nextDouble() * 1000;
+            y[i] = random.nextDouble() * 1000;
+            keys[i] = i;
+        }
+        File file = folder.newFile("test.pidx");
+        SourceStamp stamp = new SourceStamp(1, 2);
+        MappedPointIndex.write(file, stamp, x, y, keys, count);
+        MappedPointIndex index = MappedPointIndex.open(file, stamp);
+        assertNotNull(index);
+        assertEquals(count, index.size());
+
+        for (int q = 0; q < 20; q++) {
+            double minX = random.nextDouble() * 900;
+            double minY = random.nextDouble() * 900;
+            Envelope envelope = new Envelope(minX, minX + random.nextDouble() * 100, minY, minY + random.nextDouble() * 100);
+            List<Object> expected = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (envelope.contains(x[i], y[i])) {
+                    expected.add(keys[i]);
+                }
+            }
+            List<Object> found = index.query(envelope);
+            Collections.sort((List) found);
+            assertEquals(expected, found);
+        }
+        assertEquals(count, index.query(new Envelope(-1, 1001, -1, 1001)).size());
+    }
+
+    @Test
+    public void testOutOfDate() throws Exception {
+        File file = folder.newFile("test.pidx");
+        MappedPointIndex.write(file, new SourceStamp(1, 2), new double[]{1}, new double[]{1}, new long[]{1}, 1);
+        assertNull(MappedPointIndex.open(file, new SourceStamp(1, 3)));
+        assertNotNull(MappedPointIndex.open(file, new SourceStamp(1, 2)));
+    }
+}
@@ -0,0 +1,344 @@
+package nl.b3p.geotools.data.msaccess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.referencing.CRS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+public class MsAccessDataStoreTest {
+
+    private static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    private static final String POINTS = "POINTS";
+    private static final int ROWS = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String url;
+    private MsAccessDataStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        url = TestDatabase.newUrl();
+        TestDatabase.createPoints(url, POINTS, ROWS);
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.dispose();
+        }
+    }
+
+    private MsAccessDataStore open(Map<String, Object> params) throws IOException {
+        return open(MsAccessDataStore.DEFAULT_POOL_SIZE, params);
+    }
+
+    private MsAccessDataStore open(int poolSize, Map<String, Object> params) throws IOException {
+        store = TestDatabase.openDataStore(url, folder.newFile("test.mdb"), poolSize, params);
+        return store;
+    }
+
+    private static List<SimpleFeature> read(FeatureReader<SimpleFeatureType, SimpleFeature> reader) throws IOException {
+        List<SimpleFeature> features = new ArrayList<>();
+        try {
+            while (reader.hasNext()) {
+                features.add(reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+        return features;
+    }
+
+    private List<SimpleFeature> read(Query query) throws IOException {
+        return read(store.getFeatureReader(query, Transaction.AUTO_COMMIT));
+    }
+
+    private static Set<String> ids(List<SimpleFeature> features) {
+        Set<String> ids = new HashSet<>();
+        for (SimpleFeature f : features) {
+            ids.add(f.getID());
+        }
+        return ids;
+    }
+
+    private static List<String> idList(List<SimpleFeature> features) {
+        List<String> ids = new ArrayList<>();
+        for (SimpleFeature f : features) {
+            ids.add(f.getID());
+        }
+        return ids;
+    }
+
+    private static List<String> idList(int... keys) {
+        List<String> ids = new ArrayList<>();
+        for (int key : keys) {
+            ids.add(POINTS + "." + key);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        open(Collections.<String, Object>emptyMap());
+        Query query = new Query(POINTS);
+        query.setSortBy(new SortBy[]{ff.sort("ID", SortOrder.ASCENDING)});
+        query.setStartIndex(10);
+        query.setMaxFeatures(5);
+        assertEquals(idList(10, 11, 12, 13, 14), idList(read(query)));
+
+        query.setSortBy(new SortBy[]{ff.sort("ID", SortOrder.DESCENDING)});
+        query.setStartIndex(0);
+        query.setMaxFeatures(3);
+        assertEquals(idList(299, 298, 297), idList(read(query)));
+
+        query.setSortBy(new SortBy[]{SortBy.NATURAL_ORDER});
+        query.setStartIndex(ROWS - 5);
+        query.setMaxFeatures(10);
+        assertEquals(idList(295, 296, 297, 298, 299), idList(read(query)));
+
+        // pages without a sort are in key order, so together they hold
+        // every feature once
+        query.setSortBy(null);
+        Set<String> all = new HashSet<>();
+        for (int page = 0; page < ROWS / 50; page++) {
+            query.setStartIndex(page * 50);
+            query.setMaxFeatures(50);
+            List<SimpleFeature> features = read(query);
+            assertEquals(50, features.size());
+            all.addAll(ids(features));
+        }
+        assertEquals(ROWS, all.size());
+    }
+
+    @Test
+    public void testPagingFiltered() throws Exception {
+        open(Collections.<String, Object>emptyMap());
+        Query query = new Query(POINTS, ff.equals(ff.property("NAME"), ff.literal("name 3")));
+        query.setSortBy(new SortBy[]{ff.sort("ID", SortOrder.ASCENDING)});
+        query.setStartIndex(2);
+        query.setMaxFeatures(2);
+        assertEquals(idList(23, 33), idList(read(query)));
+    }
+
+    @Test
+    public void testSortOnGeometry() throws Exception {
+        open(Collections.<String, Object>emptyMap());
+        Query query = new Query(POINTS);
+        query.setSortBy(new SortBy[]{ff.sort("the_geom", SortOrder.DESCENDING)});
+        query.setMaxFeatures(2);
+        assertEquals(idList(299, 298), idList(read(query)));
+    }
+
+    @Test
+    public void testFeatureReuse() throws Exception {
+        open(Collections.<String, Object>emptyMap());
+        Query query = new Query(POINTS);
+        query.getHints().put(MsAccessHints.FEATURE_REUSE, Boolean.TRUE);
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = store.getFeatureReader(query, Transaction.AUTO_COMMIT);
+        try {
+            SimpleFeature first = reader.next();
+            String id = first.getID();
+            assertSame(first, reader.next());
+            assertFalse(id.equals(first.getID()));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testFeatureReuseIgnoredWhenReprojecting() throws Exception {
+        open(Collections.<String, Object>emptyMap());
+        Query query = new Query(POINTS);
+        query.getHints().put(MsAccessHints.FEATURE_REUSE, Boolean.TRUE);
+        query.setCoordinateSystemReproject(CRS.decode("EPSG:4326"));
+        List<SimpleFeature> features = read(query);
+        assertEquals(ROWS, features.size());
+        assertEquals(ROWS, ids(features).size());
+    }
+
+    @Test
+    public void testGridPaging() throws Exception {
+        open(Collections.<String, Object>emptyMap());
+        // cells of 200 by 200 meters: 200 points in the first, 100 in the second
+        Query query = new Query(POINTS);
+        query.getHints().put(MsAccessHints.GRID_CELL_SIZE, 200);
+        query.setSortBy(new SortBy[]{ff.sort(GridAggregator.COUNT_ATTRIBUTE, SortOrder.ASCENDING)});
+        List<SimpleFeature> cells = read(query);
+        assertEquals(2, cells.size());
+        assertEquals(100, cells.get(0).getAttribute(GridAggregator.COUNT_ATTRIBUTE));
+        assertEquals(200, cells.get(1).getAttribute(GridAggregator.COUNT_ATTRIBUTE));
+
+        query.setMaxFeatures(1);
+        cells = read(query);
+        assertEquals(1, cells.size());
+        assertEquals(100, cells.get(0).getAttribute(GridAggregator.COUNT_ATTRIBUTE));
+
+        query.setStartIndex(1);
+        cells = read(query);
+        assertEquals(1, cells.size());
+        assertEquals(200, cells.get(0).getAttribute(GridAggregator.COUNT_ATTRIBUTE));
+    }
+
+    @Test
+    public void testUniquePage() throws Exception {
+        open(Collections.<String, Object>emptyMap());
+        UniqueVisitor visitor = new UniqueVisitor("NAME");
+        assertTrue(store.aggregate(new Query(POINTS), visitor));
+        assertEquals(10, visitor.getUnique().size());
+
+        visitor = new UniqueVisitor("NAME");
+        visitor.setStartIndex(2);
+        visitor.setMaxFeatures(3);
+        assertTrue(store.aggregate(new Query(POINTS), visitor));
+        assertEquals(new HashSet<>(Arrays.asList("name 2", "name 3", "name 4")), visitor.getUnique());
+
+        // CODE is null for every seventh row, nulls are not counted
+        visitor = new UniqueVisitor("CODE");
+        visitor.setMaxFeatures(2);
+        assertTrue(store.aggregate(new Query(POINTS), visitor));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), visitor.getUnique());
+    }
+
+    private boolean readsSnapshot(Query query) throws IOException {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = store.getFeatureReader(query, Transaction.AUTO_COMMIT);
+        boolean snapshot = reader instanceof SnapshotFeatureReader;
+        assertEquals(ROWS, read(reader).size());
+        return snapshot;
+    }
+
+    @Test
+    public void testSnapshotAfterThreshold() throws Exception {
+        TestDatabase.execute(url, "update POINTS set CHANGED = timestamp '2020-01-02 03:04:05.123456' where ID = 3");
+        Map<String, Object> params = new HashMap<>();
+        params.put(MsAccessDataStoreFactory.PARAM_SNAPSHOT_CACHE_SIZE.key, 1);
+        params.put(MsAccessDataStoreFactory.PARAM_SNAPSHOT_THRESHOLD.key, 2);
+        open(params);
+
+        assertFalse(readsSnapshot(new Query(POINTS)));
+        assertTrue(readsSnapshot(new Query(POINTS)));
+        assertTrue(readsSnapshot(new Query(POINTS)));
+
+        Query query = new Query(POINTS, ff.equals(ff.property("ID"), ff.literal(3)));
+        List<SimpleFeature> features = read(query);
+        assertEquals(1, features.size());
+        Timestamp changed = (Timestamp) features.get(0).getAttribute("CHANGED");
+        assertNotNull(changed);
+        assertEquals(123456000, changed.getNanos());
+    }
+
+    @Test
+    public void testPreloadSnapshot() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put(MsAccessDataStoreFactory.PARAM_SNAPSHOT_CACHE_SIZE.key, 1);
+        params.put(MsAccessDataStoreFactory.PARAM_SNAPSHOT_THRESHOLD.key, 0);
+        open(params);
+
+        assertFalse(readsSnapshot(new Query(POINTS)));
+        assertFalse(readsSnapshot(new Query(POINTS)));
+        assertTrue(store.preloadSnapshot(POINTS));
+        assertTrue(readsSnapshot(new Query(POINTS)));
+    }
+
+    @Test
+    public void testSingleConnectionPool() throws Exception {
+        // the key is looked up on the first read, not while the reader holds
+        // the only connection
+        open(1, Collections.<String, Object>emptyMap());
+        List<SimpleFeature> features = read(new Query(POINTS));
+        assertEquals(ROWS, features.size());
+        assertTrue(ids(features).contains(POINTS + ".42"));
+    }
+
+    @Test
+    public void testPartitionedScan() throws Exception {
+        TestDatabase.createPoints(url, "LARGE", 2500);
+        Map<String, Object> params = new HashMap<>();
+        params.put(MsAccessDataStoreFactory.PARAM_SCAN_PARTITIONS.key, 4);
+        open(4, params);
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = store.getFeatureReader(new Query("LARGE"), Transaction.AUTO_COMMIT);
+        assertTrue(reader instanceof QueueFeatureReader);
+        List<SimpleFeature> features = read(reader);
+        assertEquals(2500, features.size());
+        assertEquals(2500, ids(features).size());
+
+        // a filtered query is read with a single query
+        Query query = new Query("LARGE", ff.bbox("the_geom", 100000, 400000, 100100, 400100, TestDatabase.EPSG));
+        reader = store.getFeatureReader(query, Transaction.AUTO_COMMIT);
+        assertTrue(reader instanceof MsAccessFeatureReader);
+        assertEquals(101, read(reader).size());
+    }
+
+    @Test
+    public void testExportAll() throws Exception {
+        TestDatabase.createPoints(url, "OTHER", 50);
+        open(Collections.<String, Object>emptyMap());
+        AtomicInteger exported = new AtomicInteger();
+        Map<String, Integer> counts = store.exportAll(new String[]{POINTS, "OTHER"}, 2, f -> exported.incrementAndGet());
+        assertEquals(Integer.valueOf(ROWS), counts.get(POINTS));
+        assertEquals(Integer.valueOf(50), counts.get("OTHER"));
+        assertEquals(ROWS + 50, exported.get());
+
+        try {
+            store.exportAll(new String[]{POINTS, "OTHER"}, 2, f -> {
+                if (f.getID().startsWith("OTHER.")) {
+                    throw new IOException("sink failed");
+                }
+            });
+            fail("export did not fail");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().startsWith("Export of OTHER failed"));
+        }
+    }
+
+    @Test
+    public void testSidecarIndex() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put(MsAccessDataStoreFactory.PARAM_SIDECAR_INDEX.key, Boolean.TRUE);
+        open(params);
+        Query query = new Query(POINTS, ff.bbox("the_geom", 100010, 400000, 100019.5, 400100, TestDatabase.EPSG));
+        List<SimpleFeature> features = read(query);
+        assertEquals(10, features.size());
+        assertTrue(ids(features).contains(POINTS + ".19"));
+
+        SpatialIndexManager indexes = new SpatialIndexManager(store, store.getSourceFile(), true);
+        File file = indexes.getSidecarFile(POINTS);
+        assertTrue(file.isFile());
+        assertTrue(indexes.getIndex(POINTS) instanceof MappedPointIndex);
+        assertFalse(indexes.getSidecarFile("A B").equals(indexes.getSidecarFile("A_B")));
+    }
+}
@@ -0,0 +1,113 @@
+package nl.b3p.geotools.data.msaccess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.geotools.data.DataUtilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+public class MsAccessFilterToSQLTest {
+
+    private static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+
+    private MsAccessFilterToSQL toSQL;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureType ft = DataUtilities.createType("test",
+                "ID:java.lang.Long,CODE:java.lang.Long,NAME:String,X:java.lang.Double,Y:java.lang.Double,the_geom:Point");
+        toSQL = new MsAccessFilterToSQL(RowMapping.compile(ft, new String[]{"X"}, new String[]{"Y"}), "`");
+    }
+
+    private Filter code(long value) {
+        return ff.equals(ff.property("CODE"), ff.literal(value));
+    }
+
+    private Filter id(long value) {
+        return ff.greater(ff.property("ID"), ff.literal(value));
+    }
+
+    @Test
+    public void testAndWithOr() {
+        Filter filter = ff.and(ff.bbox("the_geom", 0, 0, 10, 10, null), ff.or(code(1), id(5)));
+        assertTrue(toSQL.encode(filter));
+        assertEquals("(`X` between ? and ? and `Y` between ? and ?) and ((`CODE` = ?) or (`ID` > ?))", toSQL.getWhere());
+        assertEquals(Arrays.asList(0.0, 10.0, 0.0, 10.0, 1L, 5L), toSQL.getParameters());
+        assertEquals(Filter.INCLUDE, toSQL.getPostFilter());
+    }
+
+    @Test
+    public void testOr() {
+        assertTrue(toSQL.encode(ff.or(code(1), id(5))));
+        assertEquals("((`CODE` = ?) or (`ID` > ?))", toSQL.getWhere());
+    }
+
+    @Test
+    public void testOrOfAnds() {
+        Filter filter = ff.or(ff.and(code(1), id(5)), ff.and(code(2), id(6)));
+        assertTrue(toSQL.encode(filter));
+        assertEquals("(((`CODE` = ?) and (`ID` > ?)) or ((`CODE` = ?) and (`ID` > ?)))", toSQL.getWhere());
+        assertEquals(Arrays.asList(1L, 5L, 2L, 6L), toSQL.getParameters());
+    }
+
+    @Test
+    public void testNotOr() {
+        Filter not = ff.not(ff.or(code(1), id(9)));
+        Filter filter = ff.and(id(5), not);
+        // rows with nulls are selected, the post filter removes those that
+        // do not match
+        assertFalse(toSQL.encode(filter));
+        assertEquals("(`ID` > ?) and ((not (((`CODE` = ?) or (`ID` > ?))) or `CODE` is null or `ID` is null))", toSQL.getWhere());
+        assertEquals(Arrays.asList(5L, 1L, 9L), toSQL.getParameters());
+        assertEquals(not, toSQL.getPostFilter());
+    }
+
+    @Test
+    public void testNotEqualSelectsNull() {
+        assertTrue(toSQL.encode(ff.notEqual(ff.property("CODE"), ff.literal(1L))));
+        assertEquals("(`CODE` <> ? or `CODE` is null)", toSQL.getWhere());
+    }
+
+    @Test
+    public void testNotComparisonSelectsNull() {
+        assertTrue(toSQL.encode(ff.not(code(1))));
+        assertEquals("(not (`CODE` = ?) or `CODE` is null)", toSQL.getWhere());
+        assertTrue(toSQL.encode(ff.not(ff.isNull(ff.property("CODE")))));
+        assertEquals("not (`CODE` is null)", toSQL.getWhere());
+    }
+
+    @Test
+    public void testTransformedBBOXIsPostFilter() throws Exception {
+        SimpleFeatureType ft = DataUtilities.createType("test",
+                "ID:java.lang.Long,X:java.lang.Double,Y:java.lang.Double,the_geom:Point:srid=28992");
+        MsAccessFilterToSQL rd = new MsAccessFilterToSQL(RowMapping.compile(ft, new String[]{"X"}, new String[]{"Y"}), "`");
+        Filter bbox = ff.bbox("the_geom", 5.0, 52.0, 5.1, 52.1, "EPSG:4326");
+        assertFalse(rd.encode(bbox));
+        assertEquals("`X` between ? and ? and `Y` between ? and ?", rd.getWhere());
+        assertEquals(bbox, rd.getPostFilter());
+        assertTrue(rd.encode(ff.bbox("the_geom", 0, 300000, 1000, 301000, "EPSG:28992")));
+    }
+
+    @Test
+    public void testOrOfEqualsIsInList() {
+        Filter filter = ff.and(id(5), ff.or(code(1), code(2)));
+        assertTrue(toSQL.encode(filter));
+        assertEquals("(`ID` > ?) and (`CODE` in (?, ?))", toSQL.getWhere());
+    }
+
+    @Test
+    public void testPartialOrIsPostFilter() {
+        Filter or = ff.or(code(1), ff.like(ff.property("the_geom"), "a*"));
+        Filter filter = ff.and(id(5), or);
+        assertFalse(toSQL.encode(filter));
+        assertEquals("`ID` > ?", toSQL.getWhere());
+        assertEquals(or, toSQL.getPostFilter());
+    }
+}
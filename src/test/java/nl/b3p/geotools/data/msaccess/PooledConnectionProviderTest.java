@@ -0,0 +1,78 @@
+package nl.b3p.geotools.data.msaccess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.sql.Connection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledConnectionProviderTest {
+
+    private TestDatabase.JdbcConnectionProvider connections;
+    private PooledConnectionProvider pool;
+
+    @Before
+    public void setUp() {
+        connections = new TestDatabase.JdbcConnectionProvider(TestDatabase.newUrl());
+        pool = new PooledConnectionProvider(connections, 2, 60000L, 200L);
+    }
+
+    @After
+    public void tearDown() {
+        pool.dispose();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Connection conn = pool.getConnection();
+            assertFalse(conn.isClosed());
+            conn.close();
+            assertTrue(conn.isClosed());
+        }
+        assertEquals(1, connections.opened.get());
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        assertEquals(2, pool.getActiveCount());
+        try {
+            pool.getConnection();
+            fail("borrowed more connections than the pool size");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().startsWith("Timeout"));
+        }
+        // closing twice returns the connection once
+        first.close();
+        first.close();
+        assertEquals(1, pool.getActiveCount());
+        pool.getConnection().close();
+        second.close();
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(2, connections.opened.get());
+    }
+
+    @Test
+    public void testDisposed() throws Exception {
+        Connection conn = pool.getConnection();
+        pool.dispose();
+        // returned after dispose, closed instead of kept
+        conn.close();
+        assertEquals(0, pool.getIdleCount());
+        try {
+            pool.getConnection();
+            fail("borrowed from a disposed pool");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("disposed"));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package nl.b3p.geotools.data.msaccess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class RowFeatureTest {
+
+    private RowFeature feature;
+
+    @Before
+    public void setUp() {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName("POINTS");
+        builder.add(RowMapping.GEOMETRY_NAME, Point.class);
+        builder.add("NAME", String.class);
+        builder.add("X", Double.class);
+        builder.add("Y", Double.class);
+        SimpleFeatureType type = builder.buildFeatureType();
+        feature = new RowFeature(RowMapping.compile(type, new String[]{"X"}, new String[]{"Y"}));
+        fill("a", 1, 2);
+    }
+
+    private void fill(String name, double x, double y) {
+        RowBuffer row = feature.getRow();
+        row.objects[1] = name;
+        row.doubles[2] = x;
+        row.doubles[3] = y;
+        row.x = x;
+        row.y = y;
+        row.hasPoint = true;
+        feature.reset("POINTS." + name);
+    }
+
+    @Test
+    public void testValues() {
+        assertEquals("a", feature.getAttribute("NAME"));
+        assertEquals(2.0, feature.getAttribute("Y"));
+        Point point = (Point) feature.getDefaultGeometry();
+        assertEquals(1, point.getX(), 0);
+        assertEquals(2, point.getY(), 0);
+        assertEquals(1, feature.getBounds().getMinX(), 0);
+        assertEquals(2, feature.getBounds().getMaxY(), 0);
+    }
+
+    @Test
+    public void testPropertyChangeWritesThrough() {
+        feature.getProperty("NAME").setValue("b");
+        assertEquals("b", feature.getAttribute("NAME"));
+        assertEquals("b", feature.getAttributes().get(1));
+
+        feature.setAttribute("NAME", "c");
+        assertEquals("c", feature.getProperty("NAME").getValue());
+
+        feature.setAttribute("X", 5.0);
+        assertEquals(5.0, feature.getProperty("X").getValue());
+
+        double[] xy = new double[2];
+        feature.getDefaultGeometryProperty().setValue(null);
+        assertFalse(feature.getPoint(xy, 0));
+
+        // the next row is read from the buffer again
+        fill("d", 3, 4);
+        assertEquals("d", feature.getAttribute("NAME"));
+        assertTrue(feature.getPoint(xy, 0));
+        assertEquals(3, xy[0], 0);
+    }
+}
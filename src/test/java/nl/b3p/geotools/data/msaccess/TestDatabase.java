@@ -0,0 +1,154 @@
+package nl.b3p.geotools.data.msaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tables standing in for an Access database in an in-memory HSQLDB
+ * database, like the benchmark tables but small and with predictable values.
+ *
+ * A points table has an integer key ID, X and Y columns in EPSG:28992 with
+ * row i at (100000 + i, 400000 + i), NAME "name " + i % 10, CODE i % 7 or
+ * null when that is 0, and CHANGED at {@link #CHANGED} plus i seconds. All
+ * tables are listed in the controller table LAYERS.
+ */
+class TestDatabase {
+
+    static final String USER = "SA";
+    static final String CONTROLER_TABLE = "LAYERS";
+    static final String EPSG = "EPSG:28992";
+    static final long CHANGED = 1500000000000L;
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private TestDatabase() {
+    }
+
+    /**
+     * @return the url of a new empty database
+     */
+    static String newUrl() {
+        return "jdbc:hsqldb:mem:msaccess-test-" + databases.incrementAndGet();
+    }
+
+    static Connection connect(String jdbcUrl) throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, USER, "");
+    }
+
+    static void createPoints(String jdbcUrl, String name, int rows) throws SQLException {
+        try (Connection conn = connect(jdbcUrl)) {
+            try (Statement st = conn.createStatement()) {
+                try (ResultSet rs = conn.getMetaData().getTables(null, null, CONTROLER_TABLE, null)) {
+                    if (!rs.next()) {
+                        st.execute("create table " + CONTROLER_TABLE + " (TABLENAME varchar(128), TABLETYPE varchar(32))");
+                    }
+                }
+                st.execute("create table " + name + " (ID integer primary key, X double, Y double,"
+                        + " NAME varchar(40), CODE integer, CHANGED timestamp)");
+                st.execute("insert into " + CONTROLER_TABLE + " values ('" + name + "', 'point')");
+            }
+            for (int i = 0; i < rows; i++) {
+                insert(conn, name, i);
+            }
+        }
+    }
+
+    static void insert(String jdbcUrl, String name, int id) throws SQLException {
+        try (Connection conn = connect(jdbcUrl)) {
+            insert(conn, name, id);
+        }
+    }
+
+    private static void insert(Connection conn, String name, int id) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("insert into " + name + " values (?, ?, ?, ?, ?, ?)")) {
+            ps.setInt(1, id);
+            ps.setDouble(2, 100000 + id);
+            ps.setDouble(3, 400000 + id);
+            ps.setString(4, "name " + id % 10);
+            if (id % 7 == 0) {
+                ps.setNull(5, java.sql.Types.INTEGER);
+            } else {
+                ps.setInt(5, id % 7);
+            }
+            ps.setTimestamp(6, new Timestamp(CHANGED + id * 1000L));
+            ps.executeUpdate();
+        }
+    }
+
+    static void execute(String jdbcUrl, String sql) throws SQLException {
+        try (Connection conn = connect(jdbcUrl); Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    static Map<String, Object> dbconfig(File sourceFile) throws IOException {
+        Map<String, Object> dbconfig = new HashMap<>();
+        if (sourceFile != null) {
+            // only used for the files next to the database, not to connect
+            if (!sourceFile.exists() && !sourceFile.createNewFile()) {
+                throw new IOException("Could not create " + sourceFile);
+            }
+            dbconfig.put(MsAccessDataStoreFactory.PARAM_URL.key, sourceFile.toURI().toURL());
+        }
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_CONTROLER_TABLE.key, CONTROLER_TABLE);
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_CONTROLER_COLUMN_NAME.key, "TABLENAME");
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_CONTROLER_COLUMN_TYPE.key, "TABLETYPE");
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_SRS.key, EPSG);
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_XLABELS.key, "X");
+        dbconfig.put(MsAccessDataStoreFactory.PARAM_YLABELS.key, "Y");
+        return dbconfig;
+    }
+
+    /**
+     * Open a datastore on the tables of a database through a connection pool.
+     *
+     * @param sourceFile file standing in for the Access file, for the cache
+     * and index files next to it; null for none
+     * @param params extra datastore parameters
+     */
+    static MsAccessDataStore openDataStore(String jdbcUrl, File sourceFile, int poolSize,
+            Map<String, Object> params) throws IOException {
+        Map<String, Object> dbconfig = dbconfig(sourceFile);
+        dbconfig.putAll(params);
+        return new MsAccessDataStore(dbconfig, new PooledConnectionProvider(new JdbcConnectionProvider(jdbcUrl),
+                poolSize, 60000L, 5000L));
+    }
+
+    /**
+     * Opens a new connection to a JDBC url for every call, counting them.
+     */
+    static class JdbcConnectionProvider implements ConnectionProvider {
+
+        private final String jdbcUrl;
+        final AtomicInteger opened = new AtomicInteger();
+
+        JdbcConnectionProvider(String jdbcUrl) {
+            this.jdbcUrl = jdbcUrl;
+        }
+
+        @Override
+        public Connection getConnection() throws IOException {
+            try {
+                Connection conn = connect(jdbcUrl);
+                opened.incrementAndGet();
+                return conn;
+            } catch (SQLException ex) {
+                throw new IOException(ex.getLocalizedMessage());
+            }
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+}
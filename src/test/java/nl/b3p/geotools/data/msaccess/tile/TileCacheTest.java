@@ -0,0 +1,91 @@
+package nl.b3p.geotools.data.msaccess.tile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import nl.b3p.geotools.data.msaccess.SourceStamp;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TileCacheTest {
+
+    private static final SourceStamp STAMP = new SourceStamp(1000, 2000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] tile(int size) {
+        byte[] tile = new byte[size];
+        tile[0] = (byte) size;
+        return tile;
+    }
+
+    private static int countTiles(File dir) {
+        int count = 0;
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                count += child.isDirectory() ? countTiles(child) : child.getName().endsWith(".mvt") ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testLayersAndStamps() throws Exception {
+        File dir = folder.newFolder();
+        TileCache cache = new TileCache(1000, dir, 10000);
+        cache.put("a.mdb/POINTS/4096", STAMP, 1, 0, 1, tile(10));
+        assertArrayEquals(tile(10), cache.get("a.mdb/POINTS/4096", STAMP, 1, 0, 1));
+        assertNull(cache.get("a.mdb/POINTS/512", STAMP, 1, 0, 1));
+        assertNull(cache.get("b.mdb/POINTS/4096", STAMP, 1, 0, 1));
+        // same modification time, other size
+        assertNull(cache.get("a.mdb/POINTS/4096", new SourceStamp(1001, 2000), 1, 0, 1));
+
+        // from disk after a restart
+        cache = new TileCache(1000, dir, 10000);
+        assertEquals(10, cache.getDiskBytes());
+        assertArrayEquals(tile(10), cache.get("a.mdb/POINTS/4096", STAMP, 1, 0, 1));
+
+        cache.purge("a.mdb/POINTS/4096", new SourceStamp(1000, 3000));
+        assertEquals(0, cache.getDiskBytes());
+        assertEquals(0, countTiles(dir));
+    }
+
+    @Test
+    public void testLayerNameStaysInDirectory() throws Exception {
+        File parent = folder.newFolder();
+        File dir = new File(parent, "tiles");
+        TileCache cache = new TileCache(1000, dir, 10000);
+        cache.put("../../x", STAMP, 0, 0, 0, tile(10));
+        String[] names = parent.list();
+        assertEquals(1, names.length);
+        assertEquals(1, countTiles(dir));
+        assertFalse(new File(parent.getParentFile(), "x").exists());
+    }
+
+    @Test
+    public void testExistingTilesCount() throws Exception {
+        File dir = folder.newFolder();
+        TileCache cache = new TileCache(1000, dir, 10000);
+        for (int x = 0; x < 4; x++) {
+            cache.put("layer", STAMP, 2, x, 0, tile(100));
+            File file = new File(dir, "layer/1000-2000/2/" + x + "/0.mvt");
+            assertTrue(file.isFile());
+            file.setLastModified(1000000L * (x + 1));
+        }
+        assertEquals(400, cache.getDiskBytes());
+
+        // the oldest tiles do not fit the budget of the next run
+        cache = new TileCache(1000, dir, 250);
+        assertEquals(200, cache.getDiskBytes());
+        assertEquals(2, countTiles(dir));
+        assertNull(cache.get("layer", STAMP, 2, 0, 0));
+        assertArrayEquals(tile(100), cache.get("layer", STAMP, 2, 3, 0));
+    }
+}
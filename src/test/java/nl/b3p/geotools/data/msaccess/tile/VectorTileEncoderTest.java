@@ -0,0 +1,164 @@
+package nl.b3p.geotools.data.msaccess.tile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class VectorTileEncoderTest {
+
+    /**
+     * Reads the fields of a protocol buffer message.
+     */
+    private static class Message {
+
+        private final byte[] bytes;
+        private int pos = 0;
+
+        Message(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean hasNext() {
+            return pos < bytes.length;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0;; shift += 7) {
+                int b = bytes[pos++] & 0xff;
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        byte[] bytes() {
+            int length = (int) varint();
+            byte[] result = Arrays.copyOfRange(bytes, pos, pos + length);
+            pos += length;
+            return result;
+        }
+
+        long fixed64() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (long) (bytes[pos++] & 0xff) << (i * 8);
+            }
+            return value;
+        }
+
+        long[] packed() {
+            Message packed = new Message(bytes());
+            List<Long> values = new ArrayList<>();
+            while (packed.hasNext()) {
+                values.add(packed.varint());
+            }
+            long[] result = new long[values.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = values.get(i);
+            }
+            return result;
+        }
+    }
+
+    private static String utf8(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, new VectorTileEncoder("points", 4096).encode().length);
+    }
+
+    @Test
+    public void testPoints() {
+        VectorTileEncoder encoder = new VectorTileEncoder("points", 4096);
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("NAME", "a");
+        attributes.put("CODE", 3L);
+        attributes.put("EMPTY", null);
+        encoder.addPoint(7, 10, 20, attributes);
+        attributes.put("CODE", -1L);
+        encoder.addPoint(-1, -5, 4100, attributes);
+
+        Message tile = new Message(encoder.encode());
+        assertEquals((3 << 3) | 2, tile.varint());
+        Message layer = new Message(tile.bytes());
+        assertEquals(false, tile.hasNext());
+
+        String name = null;
+        int version = 0;
+        int extent = 0;
+        List<byte[]> features = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        while (layer.hasNext()) {
+            long tag = layer.varint();
+            switch ((int) (tag >> 3)) {
+                case 1:
+                    name = utf8(layer.bytes());
+                    break;
+                case 2:
+                    features.add(layer.bytes());
+                    break;
+                case 3:
+                    keys.add(utf8(layer.bytes()));
+                    break;
+                case 4:
+                    Message value = new Message(layer.bytes());
+                    long valueTag = value.varint();
+                    if (valueTag == ((1 << 3) | 2)) {
+                        values.add(utf8(value.bytes()));
+                    } else if (valueTag == (6 << 3)) {
+                        long n = value.varint();
+                        values.add((n >>> 1) ^ -(n & 1));
+                    } else {
+                        values.add(Double.longBitsToDouble(value.fixed64()));
+                    }
+                    break;
+                case 5:
+                    extent = (int) layer.varint();
+                    break;
+                case 15:
+                    version = (int) layer.varint();
+                    break;
+                default:
+                    throw new AssertionError("Unexpected field " + (tag >> 3));
+            }
+        }
+        assertEquals("points", name);
+        assertEquals(2, version);
+        assertEquals(4096, extent);
+        assertEquals(Arrays.asList("NAME", "CODE"), keys);
+        assertEquals(Arrays.<Object>asList("a", 3L, -1L), values);
+        assertEquals(2, features.size());
+
+        Message feature = new Message(features.get(0));
+        assertEquals(1 << 3, feature.varint());
+        assertEquals(7, feature.varint());
+        assertEquals((2 << 3) | 2, feature.varint());
+        assertArrayEquals(new long[]{0, 0, 1, 1}, feature.packed());
+        assertEquals(3 << 3, feature.varint());
+        assertEquals(1, feature.varint());
+        assertEquals((4 << 3) | 2, feature.varint());
+        // MoveTo of one point, zigzag encoded
+        assertArrayEquals(new long[]{9, 20, 40}, feature.packed());
+
+        // without id, with the values of the first feature shared
+        feature = new Message(features.get(1));
+        assertEquals((2 << 3) | 2, feature.varint());
+        assertArrayEquals(new long[]{0, 0, 1, 2}, feature.packed());
+        feature.varint();
+        feature.varint();
+        feature.varint();
+        assertArrayEquals(new long[]{9, 9, 8200}, feature.packed());
+    }
+}